@@ -5,10 +5,15 @@ import rsa.ride.RideRole;
 import rsa.ride.RideMatchSorter;
 import rsa.user.User;
 import rsa.user.UserStars;
+import rsa.quad.ExpiringIndex;
+import rsa.quad.GridIndex;
 import rsa.quad.PointQuadtree;
+import rsa.quad.SpatialIndex;
 
 import rsa.RideSharingAppException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -18,10 +23,61 @@ public class Matcher implements Serializable {
     private static Location topLeft;
     private static Location bottomRight;
     private static double radius;
+    private static long rideTimeToLive;
 
-    private final List<Ride> rides = new ArrayList<>();
+    private final Map<Long, Ride> rides = new LinkedHashMap<>();
     private final Map<Long, RideMatch> matches = new TreeMap<>();
-    private final PointQuadtree<Ride> rideTree = new PointQuadtree<>(0, 0, 1000, 1000); // ajustável
+    private final SpatialIndex<Ride> rideIndex;
+
+    public Matcher() {
+        PointQuadtree<Ride> rideTree = new PointQuadtree<>(0, 0, 1000, 1000); // ajustável
+        rideTree.setIdentityIndexed(true);
+        rideTree.setGrowable(true);
+
+        rideIndex = rideTimeToLive > 0 ? new ExpiringIndex<>(rideTree, rideTimeToLive) : rideTree;
+        listenForExpiry();
+    }
+
+    /**
+     * Cria um matcher que usa o índice espacial dado para as boleias
+     * (por exemplo, um MortonIndex para zonas com muitas leituras).
+     */
+    public Matcher(SpatialIndex<Ride> rideIndex) {
+        this.rideIndex = rideIndex;
+        listenForExpiry();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        listenForExpiry();
+    }
+
+    /**
+     * Se as boleias expirarem, esquece as que expiram (a ação de expiração
+     * não é serializada, pelo que é registada de novo ao ler o matcher).
+     */
+    private void listenForExpiry() {
+        if (rideIndex instanceof ExpiringIndex<Ride> expiringRides)
+            expiringRides.setExpiryListener(this::forget);
+    }
+
+    /**
+     * Esquece uma boleia que expirou e os emparelhamentos em que entra.
+     */
+    private void forget(Ride ride) {
+        rides.remove(ride.getId());
+        matches.values().removeIf(match ->
+                match.getRide(RideRole.DRIVER) == ride || match.getRide(RideRole.PASSENGER) == ride);
+    }
+
+    /**
+     * Cria um matcher cujas boleias ficam numa grelha uniforme com células
+     * de lado igual ao raio atual, adequada a zonas densas em que o raio
+     * praticamente não muda.
+     */
+    public static Matcher withGrid() {
+        return new Matcher(new GridIndex<>(radius > 0 ? radius : 1));
+    }
 
     public static void setTopLeft(Location loc) {
         topLeft = loc;
@@ -47,10 +103,23 @@ public class Matcher implements Serializable {
         return radius;
     }
 
+    /**
+     * Tempo (em milissegundos) ao fim do qual uma boleia sem atualizações
+     * é esquecida pelos matchers criados depois. Zero (por omissão)
+     * significa que as boleias nunca expiram.
+     */
+    public static void setRideTimeToLive(long millis) {
+        rideTimeToLive = millis;
+    }
+
+    public static long getRideTimeToLive() {
+        return rideTimeToLive;
+    }
+
     public long addRide(User user, Location from, Location to, String plate, float cost) throws RideSharingAppException {
         Ride ride = new Ride(user, from, to, plate, cost);
-        rides.add(ride);
-        rideTree.insert(ride);
+        rides.put(ride.getId(), ride);
+        rideIndex.insert(ride);
         tryToMatch(ride);
         return ride.getId();
     }
@@ -58,7 +127,9 @@ public class Matcher implements Serializable {
     public SortedSet<RideMatch> updateRide(long rideId, Location current) {
         Ride ride = findRideById(rideId);
         if (ride == null) return new TreeSet<>();
+        Location previous = ride.getCurrent();
         ride.setCurrent(current);
+        rideIndex.move(ride, previous.x(), previous.y());
         return tryToMatch(ride);
     }
 
@@ -84,22 +155,17 @@ public class Matcher implements Serializable {
 
 
     private Ride findRideById(long id) {
-        for (Ride ride : rides) {
-            if (ride.getId() == id) return ride;
-        }
-        return null;
+        return rides.get(id);
     }
 
     private SortedSet<RideMatch> tryToMatch(Ride ride) {
         RideRole role = ride.getRideRole();
         RideRole opposite = (role == RideRole.DRIVER) ? RideRole.PASSENGER : RideRole.DRIVER;
 
-        List<Ride> nearby = new ArrayList<>();
-        rideTree.collectNear(ride.getCurrent(), radius, nearby);
-
         SortedSet<RideMatch> results = new TreeSet<>(((RideMatchSorter) ride).getComparator());
+        Location current = ride.getCurrent();
 
-        for (Ride other : nearby) {
+        rideIndex.forEachNear(current.x(), current.y(), radius, other -> {
             if (other.getRideRole() == opposite &&
                     other.getMatch() == null &&
                     ride.getTo().x() == other.getTo().x() &&
@@ -110,7 +176,7 @@ public class Matcher implements Serializable {
                     matches.put(match.getId(), match);
                 } catch (RideSharingAppException ignored) {}
             }
-        }
+        });
 
         return results;
     }
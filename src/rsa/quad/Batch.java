@@ -0,0 +1,66 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de pontos com as coordenadas em que estão indexados, em vetores
+ * paralelos como nas folhas. As divisões, junções e reconstruções de tries
+ * repartem os pontos por estas coordenadas e não pelas atuais: um ponto
+ * cujas coordenadas mudaram só muda de célula quando for reposicionado
+ * (move), a partir da posição em que foi indexado.
+ */
+class Batch<T extends HasPoint> {
+    private Object[] elements;
+    private double[] xs;
+    private double[] ys;
+    private int size;
+
+    Batch() {
+        this(4);
+    }
+
+    Batch(int length) {
+        elements = new Object[Math.max(1, length)];
+        xs = new double[elements.length];
+        ys = new double[elements.length];
+    }
+
+    /**
+     * Acrescenta um ponto ainda não indexado, com as suas coordenadas atuais.
+     */
+    void add(T point) {
+        add(point, point.x(), point.y());
+    }
+
+    void add(T point, double x, double y) {
+        if (size == elements.length) {
+            int length = 2 * size;
+            elements = Arrays.copyOf(elements, length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+        elements[size] = point;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        return (T) elements[index];
+    }
+
+    double getX(int index) {
+        return xs[index];
+    }
+
+    double getY(int index) {
+        return ys[index];
+    }
+}
@@ -0,0 +1,233 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial que pode ser partilhado por várias threads. A região é
+ * dividida numa grelha de faixas, cada uma com a sua PointQuadtree e o seu
+ * lock de leitura/escrita. As escritas bloqueiam apenas a faixa do ponto,
+ * pelo que as divisões e junções de tries nunca são vistas a meio por uma
+ * pesquisa. As pesquisas bloqueiam para leitura só as faixas que intersetam
+ * a região pesquisada, uma de cada vez, e não esperam por escritas noutras
+ * faixas.
+ *
+ * Uma pesquisa que abranja várias faixas não é atómica: vê cada faixa num
+ * estado consistente, mas não necessariamente no mesmo instante. As ações
+ * de forEachNear são executadas depois de libertados os locks, pelo que
+ * podem alterar o índice.
+ */
+public class ConcurrentPointQuadtree<T extends HasPoint> implements SpatialIndex<T> {
+    private static final int DEFAULT_STRIPES = 8;
+
+    private final double minX, minY, maxX, maxY;
+    private final int stripes;
+    private final double[] boundsX, boundsY;
+    private final List<PointQuadtree<T>> trees = new ArrayList<>();
+    private final ReadWriteLock[] locks;
+
+    public ConcurrentPointQuadtree(double minX, double minY, double maxX, double maxY) {
+        this(minX, minY, maxX, maxY, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Cria um índice com stripes x stripes faixas de igual dimensão.
+     */
+    public ConcurrentPointQuadtree(double minX, double minY, double maxX, double maxY, int stripes) {
+        if (stripes < 1)
+            throw new IllegalArgumentException("At least one stripe is needed");
+
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.stripes = stripes;
+        this.boundsX = bounds(minX, maxX, stripes);
+        this.boundsY = bounds(minY, maxY, stripes);
+        this.locks = new ReadWriteLock[stripes * stripes];
+
+        for (int j = 0; j < stripes; j++) {
+            for (int i = 0; i < stripes; i++) {
+                PointQuadtree<T> tree = new PointQuadtree<>(boundsX[i], boundsY[j], boundsX[i + 1], boundsY[j + 1]);
+                tree.setIdentityIndexed(true);
+                trees.add(tree);
+                locks[j * stripes + i] = new ReentrantReadWriteLock();
+            }
+        }
+    }
+
+    private static double[] bounds(double min, double max, int stripes) {
+        double[] bounds = new double[stripes + 1];
+        for (int i = 0; i < stripes; i++) bounds[i] = min + (max - min) * i / stripes;
+        bounds[stripes] = max;
+        return bounds;
+    }
+
+    @Override
+    public void insert(T point) {
+        int stripe = stripeOf(point.x(), point.y());
+        ReadWriteLock lock = locks[stripe];
+
+        lock.writeLock().lock();
+        try {
+            trees.get(stripe).insert(point);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(T point) {
+        if (!inside(point)) return false;
+
+        int stripe = stripeOf(point.x(), point.y());
+        ReadWriteLock lock = locks[stripe];
+
+        lock.writeLock().lock();
+        try {
+            return trees.get(stripe).remove(point);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reposiciona o ponto. Se mudar de faixa, bloqueia as duas faixas por
+     * ordem crescente de índice, para que dois movimentos em sentidos opostos
+     * não fiquem à espera um do outro, e o ponto nunca é visto em nenhuma ou
+     * em ambas.
+     */
+    @Override
+    public void move(T point, double oldX, double oldY) {
+        if (!inside(point))
+            throw new PointOutOfBoundException(point);
+
+        int to = stripeOf(point.x(), point.y());
+        int from = inside(oldX, oldY) ? stripeOf(oldX, oldY) : to;
+
+        if (from == to) {
+            locks[to].writeLock().lock();
+            try {
+                trees.get(to).move(point, oldX, oldY);
+            } finally {
+                locks[to].writeLock().unlock();
+            }
+            return;
+        }
+
+        ReadWriteLock first = locks[Math.min(from, to)], second = locks[Math.max(from, to)];
+        first.writeLock().lock();
+        second.writeLock().lock();
+        try {
+            trees.get(from).remove(point);
+            trees.get(to).insert(point);
+        } finally {
+            second.writeLock().unlock();
+            first.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<T> findNear(double x, double y, double radius) {
+        Set<T> result = new HashSet<>();
+        forEachStripe(x - radius, y - radius, x + radius, y + radius,
+                tree -> tree.forEachNear(x, y, radius, result::add));
+        return result;
+    }
+
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        findNear(x, y, radius).forEach(action);
+    }
+
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        List<T> result = new ArrayList<>();
+        forEachStripe(left, bottom, right, top,
+                tree -> result.addAll(tree.findInBox(left, bottom, right, top)));
+        return result;
+    }
+
+    @Override
+    public List<T> getAll() {
+        List<T> result = new ArrayList<>();
+        forEachStripe(minX, minY, maxX, maxY, tree -> result.addAll(tree.getAll()));
+        return result;
+    }
+
+    @Override
+    public int size() {
+        int[] size = new int[1];
+        forEachStripe(minX, minY, maxX, maxY, tree -> size[0] += tree.size());
+        return size[0];
+    }
+
+    /**
+     * Iterador sobre uma cópia dos pontos indexados.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return getAll().iterator();
+    }
+
+    public boolean inside(HasPoint point) {
+        return inside(point.x(), point.y());
+    }
+
+    private boolean inside(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Aplica a ação, com o lock de leitura respetivo, a cada faixa que
+     * interseta o retângulo dado.
+     */
+    private void forEachStripe(double left, double bottom, double right, double top,
+                               Consumer<PointQuadtree<T>> action) {
+        left = Math.max(left, minX);
+        bottom = Math.max(bottom, minY);
+        right = Math.min(right, maxX);
+        top = Math.min(top, maxY);
+        if (left > right || bottom > top) return;
+
+        int fromX = index(boundsX, left), toX = index(boundsX, right);
+        int fromY = index(boundsY, bottom), toY = index(boundsY, top);
+
+        for (int j = fromY; j <= toY; j++) {
+            for (int i = fromX; i <= toX; i++) {
+                int stripe = j * stripes + i;
+                locks[stripe].readLock().lock();
+                try {
+                    action.accept(trees.get(stripe));
+                } finally {
+                    locks[stripe].readLock().unlock();
+                }
+            }
+        }
+    }
+
+    private int stripeOf(double x, double y) {
+        return index(boundsY, y) * stripes + index(boundsX, x);
+    }
+
+    /**
+     * Faixa cujos limites contêm a coordenada; uma coordenada sobre a
+     * fronteira entre faixas fica na de cima, como nos quadrantes.
+     */
+    private int index(double[] bounds, double value) {
+        int index = (int) ((value - bounds[0]) / (bounds[stripes] - bounds[0]) * stripes);
+        index = Math.max(0, Math.min(stripes - 1, index));
+
+        while (index > 0 && value < bounds[index]) index--;
+        while (index < stripes - 1 && value >= bounds[index + 1]) index++;
+        return index;
+    }
+}
@@ -0,0 +1,113 @@
+package rsa.quad;
+
+import java.io.Serializable;
+
+/**
+ * Parâmetros de forma de uma quadtree: capacidade das folhas, profundidade
+ * máxima, tamanho mínimo das células e política de divisão. Cada
+ * PointQuadtree tem a sua própria cópia da configuração, partilhada por
+ * todas as suas tries e fixada na criação: alterar esta configuração
+ * depois disso não altera a árvore (apenas a capacidade pode ser mudada,
+ * com PointQuadtree.setCapacity).
+ * A capacidade inicial é a definida em Trie; a profundidade máxima e o
+ * tamanho mínimo das células só se definem aqui.
+ */
+public class Configuration implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_MAX_DEPTH = 32;
+
+    /**
+     * Onde passam as fronteiras entre os quadrantes quando uma folha se
+     * divide: a meio da célula ou na mediana dos pontos que contém.
+     */
+    public enum SplitPolicy {
+        MIDPOINT, MEDIAN
+    }
+
+    private int capacity;
+    private int maxDepth;
+    private double minCellSize;
+    private SplitPolicy splitPolicy;
+    private boolean compressed;
+
+    public Configuration() {
+        capacity = Trie.getCapacity();
+        maxDepth = DEFAULT_MAX_DEPTH;
+        splitPolicy = SplitPolicy.MIDPOINT;
+    }
+
+    public Configuration(Configuration other) {
+        capacity = other.capacity;
+        maxDepth = other.maxDepth;
+        minCellSize = other.minCellSize;
+        splitPolicy = other.splitPolicy;
+        compressed = other.compressed;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public double getMinCellSize() {
+        return minCellSize;
+    }
+
+    public void setMinCellSize(double minCellSize) {
+        this.minCellSize = minCellSize;
+    }
+
+    public SplitPolicy getSplitPolicy() {
+        return splitPolicy;
+    }
+
+    public void setSplitPolicy(SplitPolicy splitPolicy) {
+        this.splitPolicy = splitPolicy;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Com compressão, uma subárvore cujos pontos estão todos num mesmo
+     * quadrante ocupa diretamente a menor célula alinhada que os contém,
+     * em vez de uma cadeia de nós com um só quadrante ocupado. As células
+     * têm de estar alinhadas, pelo que a divisão é sempre a meio. Tal como
+     * o resto da configuração, fica fixada quando a quadtree é criada.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Indica se uma célula com estes limites, à profundidade dada, ainda
+     * pode ser dividida em quadrantes, isto é, se não atingiu a
+     * profundidade máxima nem o tamanho mínimo.
+     */
+    boolean canSplit(double minX, double minY, double maxX, double maxY, int depth) {
+        return depth < maxDepth &&
+                Math.abs(maxX - minX) / 2 >= minCellSize &&
+                Math.abs(maxY - minY) / 2 >= minCellSize;
+    }
+
+    /**
+     * Quadrante de (x,y) numa célula dividida em (midX,midY), com a ordem
+     * de Trie.Quadrant: 0 = NW, 1 = NE, 2 = SW, 3 = SE.
+     */
+    static int quadrant(double x, double y, double midX, double midY) {
+        if (x < midX) return y < midY ? 2 : 0;
+        else return y < midY ? 3 : 1;
+    }
+}
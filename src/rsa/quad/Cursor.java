@@ -0,0 +1,203 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Percorre por páginas os pontos de uma PointQuadtree numa região
+ * (retângulo ou círculo), sem construir o resultado completo. A travessia
+ * é em profundidade, pelos quadrantes NW, NE, SW, SE, ignorando as
+ * subárvores fora da região. A posição atual pode ser exportada num
+ * token (com a região, o caminho de quadrantes desde a raiz até à folha
+ * e a posição do próximo ponto na folha) e retomada mais tarde com
+ * PointQuadtree.resumeCursor.
+ *
+ * As páginas só são estáveis se a quadtree não for alterada entre elas;
+ * caso contrário, a travessia retomada pode repetir ou saltar pontos.
+ */
+public class Cursor<T extends HasPoint> {
+    private static final String BOX = "box";
+    private static final String CIRCLE = "circle";
+
+    private final Trie<T> root;
+    private final String kind;
+    private final double[] region;
+    private final Deque<Frame<T>> frames = new ArrayDeque<>();
+    private LeafTrie<T> leaf;
+    private int index;
+
+    private static class Frame<T extends HasPoint> {
+        final NodeTrie<T> node;
+        int next;
+
+        Frame(NodeTrie<T> node, int next) {
+            this.node = node;
+            this.next = next;
+        }
+    }
+
+    private Cursor(Trie<T> root, String kind, double[] region) {
+        this.root = root;
+        this.kind = kind;
+        this.region = region;
+    }
+
+    static <T extends HasPoint> Cursor<T> box(Trie<T> root, double left, double bottom, double right, double top) {
+        Cursor<T> cursor = new Cursor<>(root, BOX, new double[] {left, bottom, right, top});
+        cursor.start(new int[0], 0);
+        return cursor;
+    }
+
+    static <T extends HasPoint> Cursor<T> circle(Trie<T> root, double x, double y, double radius) {
+        Cursor<T> cursor = new Cursor<>(root, CIRCLE, new double[] {x, y, radius});
+        cursor.start(new int[0], 0);
+        return cursor;
+    }
+
+    /**
+     * Retoma a travessia na posição descrita pelo token.
+     */
+    static <T extends HasPoint> Cursor<T> resume(Trie<T> root, String token) {
+        String[] parts = token.split(":", -1);
+        if (parts.length != 4 || !(parts[0].equals(BOX) || parts[0].equals(CIRCLE)))
+            throw new IllegalArgumentException("Invalid cursor token: " + token);
+
+        try {
+            String[] values = parts[1].split(",");
+            double[] region = new double[values.length];
+            for (int i = 0; i < values.length; i++) region[i] = Double.parseDouble(values[i]);
+            if (region.length != (parts[0].equals(BOX) ? 4 : 3))
+                throw new IllegalArgumentException("Invalid cursor token: " + token);
+
+            int[] path = new int[parts[2].length()];
+            for (int i = 0; i < path.length; i++) {
+                path[i] = parts[2].charAt(i) - '0';
+                if (path[i] < 0 || path[i] >= Trie.Quadrant.values().length)
+                    throw new IllegalArgumentException("Invalid cursor token: " + token);
+            }
+
+            Cursor<T> cursor = new Cursor<>(root, parts[0], region);
+            cursor.start(path, Integer.parseInt(parts[3]));
+            return cursor;
+        } catch (NumberFormatException cause) {
+            throw new IllegalArgumentException("Invalid cursor token: " + token, cause);
+        }
+    }
+
+    public boolean hasNext() {
+        return leaf != null;
+    }
+
+    /**
+     * Devolve os próximos pontos da região, no máximo pageSize; devolve
+     * uma lista vazia quando a travessia terminou.
+     */
+    public List<T> next(int pageSize) {
+        List<T> page = new ArrayList<>();
+        while (leaf != null && page.size() < pageSize) {
+            page.add(leaf.get(index++));
+            skip();
+        }
+        return page;
+    }
+
+    /**
+     * Token que permite retomar a travessia neste ponto, ou null se a
+     * travessia terminou.
+     */
+    public String getToken() {
+        if (leaf == null) return null;
+
+        StringBuilder token = new StringBuilder(kind).append(':');
+        for (int i = 0; i < region.length; i++) {
+            if (i > 0) token.append(',');
+            token.append(region[i]);
+        }
+        token.append(':');
+        for (Iterator<Frame<T>> it = frames.descendingIterator(); it.hasNext(); )
+            token.append(it.next().next - 1);
+        return token.append(':').append(index).toString();
+    }
+
+    /**
+     * Desce pelo caminho dado até uma folha. Se a árvore tiver mudado e o
+     * caminho já não levar a uma folha, continua a partir do nó onde parou.
+     */
+    private void start(int[] path, int position) {
+        Trie<T> trie = root;
+        for (int quadrant : path) {
+            if (!(trie instanceof NodeTrie<T> node)) break;
+
+            frames.push(new Frame<>(node, quadrant + 1));
+            trie = node.getQuadrant(Trie.Quadrant.values()[quadrant]);
+        }
+
+        if (trie instanceof LeafTrie<T> found) {
+            leaf = found;
+            index = Math.max(0, position);
+            skip();
+        } else {
+            frames.push(new Frame<>((NodeTrie<T>) trie, 0));
+            advance();
+            skip();
+        }
+    }
+
+    /**
+     * Avança o índice até ao próximo ponto da região, passando às folhas
+     * seguintes quando a atual se esgota.
+     */
+    private void skip() {
+        while (leaf != null) {
+            while (index < leaf.size()) {
+                if (contains(leaf.getX(index), leaf.getY(index))) return;
+                index++;
+            }
+            advance();
+        }
+    }
+
+    /**
+     * Passa à próxima folha que interseta a região, ou a null se não houver.
+     */
+    private void advance() {
+        leaf = null;
+        index = 0;
+
+        while (!frames.isEmpty()) {
+            Frame<T> frame = frames.peek();
+            if (frame.next == Trie.Quadrant.values().length) {
+                frames.pop();
+                continue;
+            }
+
+            Trie<T> child = frame.node.getQuadrant(Trie.Quadrant.values()[frame.next++]);
+            if (child.size() == 0 || !overlaps(child)) continue;
+
+            if (child instanceof NodeTrie<T> node) {
+                frames.push(new Frame<>(node, 0));
+            } else {
+                leaf = (LeafTrie<T>) child;
+                return;
+            }
+        }
+    }
+
+    private boolean overlaps(Trie<T> trie) {
+        if (kind.equals(BOX)) return trie.intersects(region[0], region[1], region[2], region[3]);
+        return trie.overlaps(region[0], region[1], region[2]);
+    }
+
+    private boolean contains(double x, double y) {
+        if (kind.equals(BOX))
+            return x >= region[0] && x <= region[2] && y >= region[1] && y <= region[3];
+
+        double dx = x - region[0], dy = y - region[1];
+        return dx * dx + dy * dy <= region[2] * region[2];
+    }
+}
@@ -0,0 +1,145 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial em que cada ponto expira se não for atualizado durante
+ * um dado tempo de vida. Cada insert ou move renova o prazo do ponto; os
+ * pontos expirados são removidos em bloco por uma TimingWheel, sem
+ * percorrer o índice, no início de cada operação (ou com expire()).
+ *
+ * O relógio e a ação de expiração não são serializados: depois de lido,
+ * o índice usa o relógio do sistema e a ação tem de ser definida de novo.
+ */
+public class ExpiringIndex<T extends HasPoint> implements SpatialIndex<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int TICKS_PER_TIME_TO_LIVE = 16;
+
+    private final SpatialIndex<T> index;
+    private final long timeToLive;
+    private final TimingWheel<T> wheel;
+    private transient Clock clock;
+    private transient Consumer<? super T> expiryListener = point -> {};
+
+    public ExpiringIndex(SpatialIndex<T> index, long timeToLive) {
+        this(index, timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * Cria um índice cujos pontos expiram timeToLive milissegundos depois
+     * da última atualização, medidos com o relógio dado.
+     */
+    public ExpiringIndex(SpatialIndex<T> index, long timeToLive, Clock clock) {
+        if (timeToLive <= 0)
+            throw new IllegalArgumentException("Time to live must be positive");
+
+        this.index = index;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(Math.max(1, timeToLive / TICKS_PER_TIME_TO_LIVE), clock.millis());
+
+        long now = clock.millis();
+        for (T point : index.getAll()) wheel.schedule(point, now + timeToLive);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        clock = Clock.systemUTC();
+        expiryListener = point -> {};
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Ação executada sobre cada ponto que expira, depois de removido do
+     * índice (por exemplo, para o esquecer noutras estruturas).
+     */
+    public void setExpiryListener(Consumer<? super T> expiryListener) {
+        this.expiryListener = expiryListener;
+    }
+
+    /**
+     * Remove os pontos cujo prazo já passou e devolve-os.
+     */
+    public List<T> expire() {
+        List<T> expired = wheel.advance(clock.millis());
+        for (T point : expired) {
+            index.remove(point);
+            expiryListener.accept(point);
+        }
+        return expired;
+    }
+
+    @Override
+    public void insert(T point) {
+        expire();
+        index.insert(point);
+        wheel.schedule(point, clock.millis() + timeToLive);
+    }
+
+    @Override
+    public boolean remove(T point) {
+        expire();
+        wheel.cancel(point);
+        return index.remove(point);
+    }
+
+    /**
+     * Reposiciona o ponto e renova o seu prazo (antes de remover os
+     * expirados, para que não seja removido a meio do movimento). Se já
+     * tiver expirado, volta a ser inserido.
+     */
+    @Override
+    public void move(T point, double oldX, double oldY) {
+        wheel.schedule(point, clock.millis() + timeToLive);
+        expire();
+        index.move(point, oldX, oldY);
+    }
+
+    @Override
+    public Set<T> findNear(double x, double y, double radius) {
+        expire();
+        return index.findNear(x, y, radius);
+    }
+
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        expire();
+        index.forEachNear(x, y, radius, action);
+    }
+
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        expire();
+        return index.findInBox(left, bottom, right, top);
+    }
+
+    @Override
+    public List<T> getAll() {
+        expire();
+        return index.getAll();
+    }
+
+    @Override
+    public int size() {
+        expire();
+        return index.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        expire();
+        return index.iterator();
+    }
+}
@@ -0,0 +1,174 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial em grelha uniforme: o plano é dividido em células
+ * quadradas de lado fixo e cada célula não vazia guarda os seus pontos num
+ * contentor, numa tabela de dispersão indexada pelas coordenadas da célula.
+ * Com o lado igual ao raio de pesquisa, uma pesquisa por raio examina no
+ * máximo 9 células, independentemente do número de pontos indexados.
+ * A grelha não tem limites, pelo que nunca lança PointOutOfBoundException.
+ */
+public class GridIndex<T extends HasPoint> implements SpatialIndex<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    private int size;
+
+    public GridIndex(double cellSize) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("Cell size must be positive");
+
+        this.cellSize = cellSize;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public void insert(T point) {
+        cells.computeIfAbsent(key(cell(point.x()), cell(point.y())), k -> new ArrayList<>()).add(point);
+        size++;
+    }
+
+    @Override
+    public boolean remove(T point) {
+        return removeAt(point, point.x(), point.y());
+    }
+
+    @Override
+    public void move(T point, double oldX, double oldY) {
+        if (cell(oldX) == cell(point.x()) && cell(oldY) == cell(point.y()) &&
+                contains(cells.get(key(cell(oldX), cell(oldY))), point))
+            return;
+
+        removeAt(point, oldX, oldY);
+        insert(point);
+    }
+
+    private boolean removeAt(T point, double x, double y) {
+        long key = key(cell(x), cell(y));
+        List<T> bucket = cells.get(key);
+        if (bucket == null) return false;
+
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i) == point) {
+                int last = bucket.size() - 1;
+                bucket.set(i, bucket.get(last));
+                bucket.remove(last);
+                if (bucket.isEmpty()) cells.remove(key);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> boolean contains(List<T> bucket, T point) {
+        if (bucket == null) return false;
+
+        for (T element : bucket) {
+            if (element == point) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Set<T> findNear(double x, double y, double radius) {
+        Set<T> result = new HashSet<>();
+        forEachNear(x, y, radius, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        double r2 = radius * radius;
+
+        forEachBucket(x - radius, y - radius, x + radius, y + radius, bucket -> {
+            for (int i = 0; i < bucket.size(); i++) {
+                T point = bucket.get(i);
+                double dx = point.x() - x, dy = point.y() - y;
+                if (dx * dx + dy * dy <= r2) action.accept(point);
+            }
+        });
+    }
+
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        List<T> result = new ArrayList<>();
+
+        forEachBucket(left, bottom, right, top, bucket -> {
+            for (T point : bucket) {
+                if (point.x() >= left && point.x() <= right && point.y() >= bottom && point.y() <= top)
+                    result.add(point);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Aplica a ação aos contentores das células que intersetam o retângulo.
+     * Se o retângulo cobrir mais células do que as que estão ocupadas,
+     * percorre antes as células ocupadas.
+     */
+    private void forEachBucket(double left, double bottom, double right, double top, Consumer<List<T>> action) {
+        if (left > right || bottom > top) return;
+
+        int fromX = cell(left), toX = cell(right);
+        int fromY = cell(bottom), toY = cell(top);
+        double covered = ((double) toX - fromX + 1) * ((double) toY - fromY + 1);
+
+        if (covered > cells.size()) {
+            for (Map.Entry<Long, List<T>> entry : cells.entrySet()) {
+                int cx = (int) (entry.getKey() >> 32), cy = (int) (long) entry.getKey();
+                if (cx >= fromX && cx <= toX && cy >= fromY && cy <= toY)
+                    action.accept(entry.getValue());
+            }
+        } else {
+            for (int cx = fromX; cx <= toX; cx++) {
+                for (int cy = fromY; cy <= toY; cy++) {
+                    List<T> bucket = cells.get(key(cx, cy));
+                    if (bucket != null) action.accept(bucket);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<T> getAll() {
+        List<T> result = new ArrayList<>(size);
+        for (List<T> bucket : cells.values()) result.addAll(bucket);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return getAll().iterator();
+    }
+
+    int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -3,30 +3,164 @@ package rsa.quad;
 import rsa.match.Location;
 import rsa.shared.HasPoint;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 
+/**
+ * Folha de uma quadtree. Os pontos são guardados em vetores paralelos:
+ * as referências num vetor de objetos e as coordenadas em vetores de
+ * double, para que os ciclos das pesquisas percorram valores primitivos
+ * contíguos sem chamar x() e y() em cada ponto. As coordenadas guardadas
+ * são atualizadas em move, pelo que um ponto que mude de posição tem de ser
+ * reposicionado na árvore; até lá, as divisões e junções continuam a
+ * usar as coordenadas guardadas.
+ */
 public class LeafTrie<T extends HasPoint> extends Trie<T> {
-    private final List<T> points = new ArrayList<>();
+    private static final int INITIAL_LENGTH = 4;
+
+    private Object[] elements = new Object[INITIAL_LENGTH];
+    private double[] xs = new double[INITIAL_LENGTH];
+    private double[] ys = new double[INITIAL_LENGTH];
+    private int size;
+    private boolean bucket = true;
 
     public LeafTrie(double minX, double minY, double maxX, double maxY) {
         super(minX, minY, maxX, maxY);
     }
 
+    LeafTrie(double minX, double minY, double maxX, double maxY,
+             Configuration configuration, Score<? super T> score, int depth) {
+        super(minX, minY, maxX, maxY, configuration, score, depth);
+    }
+
+    /**
+     * Acima da capacidade a folha divide-se, exceto se já não puder ser
+     * dividida ou se todos os pontos coincidirem: nesses casos a folha
+     * funciona como um contentor sem limite.
+     */
     @Override
-    public Trie<T> insert(T point) {
-        if (points.size() < Trie.getCapacity()) {
-            points.add(point);
+    Trie<T> insert(T point, double x, double y) {
+        if (size < configuration.getCapacity() || !canSplit() || coincident(x, y)) {
+            add(point, x, y);
+            return this;
+        }
+
+        Batch<T> batch = new Batch<>(size + 1);
+        collect(batch);
+        batch.add(point, x, y);
+        NodeTrie<T> node = split(batch);
+        node.build(batch);
+        return node;
+    }
+
+    /**
+     * Verifica se todos os pontos desta folha estão nas coordenadas dadas.
+     * Enquanto a folha for um contentor de pontos coincidentes (bucket)
+     * basta comparar com o primeiro; add mantém esta marca e move
+     * limpa-a, obrigando a percorrer de novo todos os pontos.
+     */
+    private boolean coincident(double x, double y) {
+        if (!bucket) {
+            for (int i = 1; i < size; i++) {
+                if (xs[i] != xs[0] || ys[i] != ys[0]) return false;
+            }
+            bucket = true;
+        }
+        return size == 0 || xs[0] == x && ys[0] == y;
+    }
+
+    /**
+     * Constrói de uma só vez a trie com estes pontos, repartindo-os
+     * recursivamente pelos quadrantes em vez de os inserir um a um.
+     * Devolve a trie que substitui esta folha (vazia).
+     */
+    Trie<T> build(Batch<T> batch) {
+        if (batch.size() <= configuration.getCapacity() || !canSplit() || allCoincident(batch)) {
+            addAll(batch);
             return this;
         }
 
-        NodeTrie<T> node = new NodeTrie<>(minX, minY, maxX, maxY);
-        for (T p : points) node.insert(p);
-        node.insert(point);
+        NodeTrie<T> node = split(batch);
+        node.build(batch);
         return node;
     }
 
+    /**
+     * Cria o nó que substitui esta folha, com as fronteiras dos quadrantes
+     * a meio da célula ou, com a política MEDIAN, na mediana dos pontos
+     * (se esta ficar estritamente dentro da célula).
+     */
+    private NodeTrie<T> split(Batch<T> batch) {
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+
+        if (configuration.isCompressed()) {
+            NodeTrie<T> node = new NodeTrie<>(minX, minY, maxX, maxY, midX, midY, configuration, score, depth);
+            compress(node, batch, midX, midY);
+            return node;
+        }
+        if (configuration.getSplitPolicy() == Configuration.SplitPolicy.MEDIAN) {
+            double medianX = median(batch, true);
+            double medianY = median(batch, false);
+            if (medianX > minX && medianX < maxX) midX = medianX;
+            if (medianY > minY && medianY < maxY) midY = medianY;
+        }
+        return new NodeTrie<>(minX, minY, maxX, maxY, midX, midY, configuration, score, depth);
+    }
+
+    /**
+     * Se os pontos estiverem todos num quadrante, coloca nele um nó vazio
+     * na menor célula alinhada que os contém, saltando os níveis em que
+     * só um quadrante estaria ocupado.
+     */
+    private void compress(NodeTrie<T> node, Batch<T> batch, double midX, double midY) {
+        double firstX = batch.getX(0), firstY = batch.getY(0);
+        boolean west = firstX < midX, south = firstY < midY;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getX(i) < midX != west || batch.getY(i) < midY != south) return;
+        }
+
+        double left = west ? minX : midX, right = west ? midX : maxX;
+        double bottom = south ? minY : midY, top = south ? midY : maxY;
+        int level = depth + 1;
+
+        while (level + 1 < configuration.getMaxDepth() &&
+                Math.abs(right - left) / 4 >= configuration.getMinCellSize() &&
+                Math.abs(top - bottom) / 4 >= configuration.getMinCellSize()) {
+            double cellMidX = (left + right) / 2, cellMidY = (bottom + top) / 2;
+            boolean cellWest = firstX < cellMidX, cellSouth = firstY < cellMidY;
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.getX(i) < cellMidX != cellWest || batch.getY(i) < cellMidY != cellSouth) {
+                    if (level > depth + 1)
+                        node.setCompressedQuadrant(firstX, firstY, new NodeTrie<>(left, bottom, right, top,
+                                cellMidX, cellMidY, configuration, score, level));
+                    return;
+                }
+            }
+
+            if (cellWest) right = cellMidX; else left = cellMidX;
+            if (cellSouth) top = cellMidY; else bottom = cellMidY;
+            level++;
+        }
+    }
+
+    private static double median(Batch<?> batch, boolean horizontal) {
+        double[] values = new double[batch.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = horizontal ? batch.getX(i) : batch.getY(i);
+        Arrays.sort(values);
+        return (values[(values.length - 1) / 2] + values[values.length / 2]) / 2;
+    }
+
+    private static boolean allCoincident(Batch<?> batch) {
+        for (int i = 1; i < batch.size(); i++) {
+            if (batch.getX(i) != batch.getX(0) || batch.getY(i) != batch.getY(0)) return false;
+        }
+        return true;
+    }
+
     @Override
     public Trie<T> insertReplace(T point) {
         delete(point);
@@ -35,7 +169,20 @@ public class LeafTrie<T extends HasPoint> extends Trie<T> {
 
     @Override
     public boolean remove(T point) {
-        return points.removeIf(p -> p.x() == point.x() && p.y() == point.y());
+        double x = point.x(), y = point.y();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (xs[i] != x || ys[i] != y) {
+                elements[kept] = elements[i];
+                xs[kept] = xs[i];
+                ys[kept] = ys[i];
+                kept++;
+            }
+        }
+        boolean removed = kept < size;
+        Arrays.fill(elements, kept, size, null);
+        size = kept;
+        return removed;
     }
 
     @Override
@@ -43,40 +190,214 @@ public class LeafTrie<T extends HasPoint> extends Trie<T> {
         remove(point);
     }
 
+    @Override
+    public Trie<T> move(T point, double oldX, double oldY) {
+        int index = indexOf(point);
+        if (index < 0) return null;
+
+        xs[index] = point.x();
+        ys[index] = point.y();
+        bucket = false;
+        return this;
+    }
+
+    @Override
+    boolean removeElement(T point, double x, double y) {
+        int index = indexOf(point);
+        if (index < 0) return false;
+
+        int last = --size;
+        elements[index] = elements[last];
+        xs[index] = xs[last];
+        ys[index] = ys[last];
+        elements[last] = null;
+        return true;
+    }
+
+    private int indexOf(T point) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == point) return i;
+        }
+        return -1;
+    }
+
+    void add(T point, double x, double y) {
+        if (size == elements.length) {
+            int length = 2 * size;
+            elements = Arrays.copyOf(elements, length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+        bucket = size == 0 || bucket && xs[0] == x && ys[0] == y;
+        elements[size] = point;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    void addAll(Batch<T> batch) {
+        for (int i = 0; i < batch.size(); i++) add(batch.get(i), batch.getX(i), batch.getY(i));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    Trie<T> compact() {
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        return (T) elements[index];
+    }
+
+    double getX(int index) {
+        return xs[index];
+    }
+
+    double getY(int index) {
+        return ys[index];
+    }
+
     @Override
     public T find(T point) {
-        for (T p : points) {
-            if (p.x() == point.x() && p.y() == point.y()) return p;
+        double x = point.x(), y = point.y();
+        for (int i = 0; i < size; i++) {
+            if (xs[i] == x && ys[i] == y) return get(i);
         }
         return null;
     }
 
     @Override
     public void collect(List<T> result) {
-        result.addAll(points);
+        for (int i = 0; i < size; i++) result.add(get(i));
+    }
+
+    @Override
+    void collect(Batch<T> batch) {
+        for (int i = 0; i < size; i++) batch.add(get(i), xs[i], ys[i]);
+    }
+
+    private void collect(Set<T> result) {
+        for (int i = 0; i < size; i++) result.add(get(i));
     }
 
     @Override
     public void collectNear(Location center, double radius, List<T> result) {
         double x = center.x(), y = center.y(), r2 = radius * radius;
-        for (T p : points) {
-            double dx = p.x() - x, dy = p.y() - y;
-            if (dx * dx + dy * dy <= r2) result.add(p);
+        if (insideCircle(x, y, radius)) {
+            collect(result);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            double dx = xs[i] - x, dy = ys[i] - y;
+            if (dx * dx + dy * dy <= r2) result.add(get(i));
         }
     }
 
     @Override
     public void collectNear(double x, double y, double radius, Set<T> result) {
         double r2 = radius * radius;
-        for (T p : points) {
-            double dx = p.x() - x, dy = p.y() - y;
-            if (dx * dx + dy * dy <= r2) result.add(p);
+        if (insideCircle(x, y, radius)) {
+            collect(result);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            double dx = xs[i] - x, dy = ys[i] - y;
+            if (dx * dx + dy * dy <= r2) result.add(get(i));
         }
     }
 
     @Override
     public void collectAll(Set<T> result) {
-        result.addAll(points);
+        collect(result);
+    }
+
+    @Override
+    public void collectInBox(double left, double bottom, double right, double top, List<T> result) {
+        if (insideBox(left, bottom, right, top)) {
+            collect(result);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (xs[i] >= left && xs[i] <= right && ys[i] >= bottom && ys[i] <= top) result.add(get(i));
+        }
+    }
+
+    @Override
+    public void collectInPolygon(Polygon polygon, List<T> result) {
+        if (insidePolygon(polygon)) {
+            collect(result);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (polygon.contains(xs[i], ys[i])) result.add(get(i));
+        }
+    }
+
+    @Override
+    public int countNear(double x, double y, double radius) {
+        if (insideCircle(x, y, radius)) return size;
+
+        double r2 = radius * radius;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            double dx = xs[i] - x, dy = ys[i] - y;
+            if (dx * dx + dy * dy <= r2) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int countInBox(double left, double bottom, double right, double top) {
+        if (insideBox(left, bottom, right, top)) return size;
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (xs[i] >= left && xs[i] <= right && ys[i] >= bottom && ys[i] <= top) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean forEachNear(double x, double y, double radius, Predicate<? super T> action) {
+        double r2 = radius * radius;
+        for (int i = 0; i < size; i++) {
+            double dx = xs[i] - x, dy = ys[i] - y;
+            if (dx * dx + dy * dy <= r2 && !action.test(get(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    void collectNearest(NearestSearch<T> search) {
+        for (int i = 0; i < size; i++) search.offer(get(i), xs[i], ys[i]);
+    }
+
+    @Override
+    double maxScore() {
+        double max = Double.NEGATIVE_INFINITY;
+        if (score == null) return max;
+
+        for (int i = 0; i < size; i++) max = Math.max(max, score.applyAsDouble(get(i)));
+        return max;
+    }
+
+    @Override
+    void collectTop(TopSearch<T> search) {
+        for (int i = 0; i < size; i++) search.offer(get(i), xs[i], ys[i]);
+    }
+
+    @Override
+    void collectNearBatch(double[] xs, double[] ys, double radius,
+                          int[] active, int activeCount, List<Set<T>> results) {
+        for (int i = 0; i < activeCount; i++) {
+            int c = active[i];
+            collectNear(xs[c], ys[c], radius, results.get(c));
+        }
     }
 
     @Override
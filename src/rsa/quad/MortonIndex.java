@@ -0,0 +1,313 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial linearizado: os pontos ficam em vetores ordenados pelo
+ * código de Morton (ordem Z) das suas coordenadas, quantizadas numa grelha
+ * de 2^BITS x 2^BITS sobre os limites do índice. Uma pesquisa por região é
+ * decomposta em poucos intervalos de códigos, percorridos sequencialmente,
+ * sem seguir referências entre nós. As inserções deslocam os vetores, pelo
+ * que este índice se destina a utilizações com muito mais leituras do que
+ * escritas.
+ */
+public class MortonIndex<T extends HasPoint> implements SpatialIndex<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int BITS = 21;
+    private static final long CELLS = 1L << BITS;
+    private static final int MAX_RANGES = 64;
+
+    private final double minX, minY, maxX, maxY;
+    private long[] codes = new long[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private Object[] elements = new Object[16];
+    private int size;
+
+    public MortonIndex(double minX, double minY, double maxX, double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    @Override
+    public void insert(T point) {
+        if (!inside(point.x(), point.y()))
+            throw new PointOutOfBoundException(point);
+
+        long code = code(point.x(), point.y());
+        int position = upperBound(code);
+
+        ensureCapacity(size + 1);
+        int moved = size - position;
+        System.arraycopy(codes, position, codes, position + 1, moved);
+        System.arraycopy(xs, position, xs, position + 1, moved);
+        System.arraycopy(ys, position, ys, position + 1, moved);
+        System.arraycopy(elements, position, elements, position + 1, moved);
+
+        codes[position] = code;
+        xs[position] = point.x();
+        ys[position] = point.y();
+        elements[position] = point;
+        size++;
+    }
+
+    /**
+     * Insere uma coleção de pontos de uma só vez, ordenando-os pelo código
+     * em vez de deslocar os vetores a cada inserção.
+     */
+    public void bulkLoad(Collection<T> points) {
+        for (T point : points) {
+            if (!inside(point.x(), point.y()))
+                throw new PointOutOfBoundException(point);
+        }
+
+        List<T> all = getAll();
+        all.addAll(points);
+        all.sort((a, b) -> Long.compare(code(a.x(), a.y()), code(b.x(), b.y())));
+
+        size = 0;
+        ensureCapacity(all.size());
+        for (T point : all) {
+            codes[size] = code(point.x(), point.y());
+            xs[size] = point.x();
+            ys[size] = point.y();
+            elements[size] = point;
+            size++;
+        }
+        Arrays.fill(elements, size, elements.length, null);
+    }
+
+    @Override
+    public boolean remove(T point) {
+        return removeAt(point, point.x(), point.y());
+    }
+
+    @Override
+    public void move(T point, double oldX, double oldY) {
+        if (!inside(point.x(), point.y()))
+            throw new PointOutOfBoundException(point);
+
+        removeAt(point, oldX, oldY);
+        insert(point);
+    }
+
+    private boolean removeAt(T point, double x, double y) {
+        if (!inside(x, y)) return false;
+
+        long code = code(x, y);
+        for (int i = lowerBound(code); i < size && codes[i] == code; i++) {
+            if (elements[i] == point) {
+                int moved = size - i - 1;
+                System.arraycopy(codes, i + 1, codes, i, moved);
+                System.arraycopy(xs, i + 1, xs, i, moved);
+                System.arraycopy(ys, i + 1, ys, i, moved);
+                System.arraycopy(elements, i + 1, elements, i, moved);
+                elements[--size] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<T> findNear(double x, double y, double radius) {
+        Set<T> result = new HashSet<>();
+        forEachNear(x, y, radius, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        double r2 = radius * radius;
+        long[] ranges = ranges(x - radius, y - radius, x + radius, y + radius);
+
+        for (int r = 0; r < ranges.length; r += 2) {
+            for (int i = lowerBound(ranges[r]); i < size && codes[i] <= ranges[r + 1]; i++) {
+                double dx = xs[i] - x, dy = ys[i] - y;
+                if (dx * dx + dy * dy <= r2) action.accept(element(i));
+            }
+        }
+    }
+
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        List<T> result = new ArrayList<>();
+        long[] ranges = ranges(left, bottom, right, top);
+
+        for (int r = 0; r < ranges.length; r += 2) {
+            for (int i = lowerBound(ranges[r]); i < size && codes[i] <= ranges[r + 1]; i++) {
+                if (xs[i] >= left && xs[i] <= right && ys[i] >= bottom && ys[i] <= top)
+                    result.add(element(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<T> getAll() {
+        List<T> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) result.add(element(i));
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public T next() {
+                if (next >= size) throw new NoSuchElementException();
+                return element(next++);
+            }
+        };
+    }
+
+    public boolean inside(HasPoint point) {
+        return inside(point.x(), point.y());
+    }
+
+    private boolean inside(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T element(int index) {
+        return (T) elements[index];
+    }
+
+    /**
+     * Intervalos de códigos [início, fim] (em pares consecutivos, por ordem
+     * crescente) que cobrem o retângulo dado. As células da grelha
+     * inteiramente dentro do retângulo dão um intervalo exato; as restantes
+     * são subdivididas enquanto houver orçamento de intervalos, e depois
+     * incluídas por inteiro (os pontos são filtrados pelas coordenadas).
+     */
+    long[] ranges(double left, double bottom, double right, double top) {
+        left = Math.max(left, minX);
+        bottom = Math.max(bottom, minY);
+        right = Math.min(right, maxX);
+        top = Math.min(top, maxY);
+        if (left > right || bottom > top) return new long[0];
+
+        List<long[]> ranges = new ArrayList<>();
+        collectRanges(0, 0, BITS, quantize(left, minX, maxX), quantize(bottom, minY, maxY),
+                quantize(right, minX, maxX), quantize(top, minY, maxY), ranges);
+
+        long[] result = new long[2 * ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            result[2 * i] = ranges.get(i)[0];
+            result[2 * i + 1] = ranges.get(i)[1];
+        }
+        return result;
+    }
+
+    /**
+     * Percorre as células da grelha por ordem Z; a célula com canto em
+     * (cellX,cellY) tem lado 2^level.
+     */
+    private static void collectRanges(long cellX, long cellY, int level,
+                                      long left, long bottom, long right, long top, List<long[]> ranges) {
+        long side = 1L << level;
+        long cellRight = cellX + side - 1, cellTop = cellY + side - 1;
+
+        if (cellX > right || cellRight < left || cellY > top || cellTop < bottom) return;
+
+        boolean inside = cellX >= left && cellRight <= right && cellY >= bottom && cellTop <= top;
+        if (inside || level == 0 || ranges.size() >= MAX_RANGES) {
+            long start = interleave(cellX, cellY);
+            long end = start + side * side - 1;
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+
+            if (last != null && last[1] + 1 == start) last[1] = end;
+            else ranges.add(new long[] {start, end});
+            return;
+        }
+
+        long half = side / 2;
+        collectRanges(cellX, cellY, level - 1, left, bottom, right, top, ranges);
+        collectRanges(cellX + half, cellY, level - 1, left, bottom, right, top, ranges);
+        collectRanges(cellX, cellY + half, level - 1, left, bottom, right, top, ranges);
+        collectRanges(cellX + half, cellY + half, level - 1, left, bottom, right, top, ranges);
+    }
+
+    long code(double x, double y) {
+        return interleave(quantize(x, minX, maxX), quantize(y, minY, maxY));
+    }
+
+    private static long quantize(double value, double min, double max) {
+        long cell = (long) ((value - min) / (max - min) * CELLS);
+        return Math.max(0, Math.min(CELLS - 1, cell));
+    }
+
+    /**
+     * Intercala os bits de x (posições pares) e de y (posições ímpares).
+     */
+    static long interleave(long x, long y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(long value) {
+        value &= CELLS - 1;
+        value = (value | value << 16) & 0x0000FFFF0000FFFFL;
+        value = (value | value << 8) & 0x00FF00FF00FF00FFL;
+        value = (value | value << 4) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | value << 2) & 0x3333333333333333L;
+        value = (value | value << 1) & 0x5555555555555555L;
+        return value;
+    }
+
+    private int lowerBound(long code) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (codes[mid] < code) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private int upperBound(long code) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (codes[mid] <= code) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= codes.length) return;
+
+        int length = Math.max(capacity, 2 * codes.length);
+        codes = Arrays.copyOf(codes, length);
+        xs = Arrays.copyOf(xs, length);
+        ys = Arrays.copyOf(ys, length);
+        elements = Arrays.copyOf(elements, length);
+    }
+}
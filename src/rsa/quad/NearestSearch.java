@@ -0,0 +1,106 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Pesquisa dos k pontos mais próximos de (x,y), feita "best-first":
+ * as tries por visitar ficam numa fila ordenada pela distância mínima
+ * à sua célula e são descartadas quando essa distância já excede a do
+ * k-ésimo melhor ponto encontrado.
+ */
+class NearestSearch<T extends HasPoint> {
+
+    private final double x, y;
+    private final int k;
+    private final PriorityQueue<Pending<T>> frontier = new PriorityQueue<>();
+    private final PriorityQueue<Candidate<T>> best =
+            new PriorityQueue<>(Collections.reverseOrder());
+
+    NearestSearch(double x, double y, int k) {
+        this.x = x;
+        this.y = y;
+        this.k = k;
+    }
+
+    /**
+     * Quadrado da distância do k-ésimo melhor ponto, ou infinito enquanto
+     * ainda não houver k candidatos.
+     */
+    double bound() {
+        return best.size() < k ? Double.POSITIVE_INFINITY : best.peek().distance;
+    }
+
+    /**
+     * Acrescenta uma trie à fronteira, se a sua célula ainda puder conter
+     * algum ponto melhor do que os já encontrados.
+     */
+    void push(Trie<T> trie) {
+        double distance = trie.minDistanceSquared(x, y);
+        if (distance <= bound())
+            frontier.add(new Pending<>(trie, distance));
+    }
+
+    void offer(T point, double px, double py) {
+        double dx = px - x, dy = py - y;
+        double distance = dx * dx + dy * dy;
+
+        if (best.size() < k) {
+            best.add(new Candidate<>(point, distance));
+        } else if (distance < best.peek().distance) {
+            best.poll();
+            best.add(new Candidate<>(point, distance));
+        }
+    }
+
+    List<T> search(Trie<T> root) {
+        if (k <= 0) return new ArrayList<>();
+
+        push(root);
+        while (!frontier.isEmpty()) {
+            Pending<T> next = frontier.poll();
+            if (next.distance > bound()) break;
+            next.trie.collectNearest(this);
+        }
+
+        List<Candidate<T>> sorted = new ArrayList<>(best);
+        Collections.sort(sorted);
+        List<T> result = new ArrayList<>(sorted.size());
+        for (Candidate<T> candidate : sorted) result.add(candidate.point);
+        return result;
+    }
+
+    private static class Pending<T extends HasPoint> implements Comparable<Pending<T>> {
+        final Trie<T> trie;
+        final double distance;
+
+        Pending(Trie<T> trie, double distance) {
+            this.trie = trie;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Pending<T> other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    private static class Candidate<T extends HasPoint> implements Comparable<Candidate<T>> {
+        final T point;
+        final double distance;
+
+        Candidate(T point, double distance) {
+            this.point = point;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate<T> other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
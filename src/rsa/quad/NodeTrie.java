@@ -5,47 +5,194 @@ import rsa.match.Location;
 
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public class NodeTrie<T extends HasPoint> extends Trie<T> {
 
     private final double midX, midY;
     private Trie<T> nw, ne, sw, se;
+    private int count;
+    private double maxScore = Double.NEGATIVE_INFINITY;
+    private boolean compressed;
 
     public NodeTrie(double minX, double minY, double maxX, double maxY) {
-        super(minX, minY, maxX, maxY);
-        this.midX = (minX + maxX) / 2;
-        this.midY = (minY + maxY) / 2;
+        this(minX, minY, maxX, maxY, (minX + maxX) / 2, (minY + maxY) / 2, new Configuration(), null, 0);
+    }
+
+    /**
+     * Cria um nó à volta de uma trie existente, que passa a ser o quadrante
+     * com o canto em (midX,midY). Usado para alargar a raiz de uma quadtree
+     * sem reinserir os pontos.
+     */
+    NodeTrie(double minX, double minY, double maxX, double maxY,
+             double midX, double midY, int depth, Trie<T> quadrant) {
+        this(minX, minY, maxX, maxY, midX, midY, quadrant.configuration, quadrant.score, depth);
+        setQuadrant((quadrant.minX + quadrant.maxX) / 2, (quadrant.minY + quadrant.maxY) / 2, quadrant);
+    }
 
-        nw = new LeafTrie<>(minX, midY, midX, maxY);
-        ne = new LeafTrie<>(midX, midY, maxX, maxY);
-        sw = new LeafTrie<>(minX, minY, midX, midY);
-        se = new LeafTrie<>(midX, minY, maxX, midY);
+    NodeTrie(double minX, double minY, double maxX, double maxY,
+             double midX, double midY, Configuration configuration, Score<? super T> score, int depth) {
+        super(minX, minY, maxX, maxY, configuration, score, depth);
+        this.midX = midX;
+        this.midY = midY;
+
+        nw = new LeafTrie<>(minX, midY, midX, maxY, configuration, score, depth + 1);
+        ne = new LeafTrie<>(midX, midY, maxX, maxY, configuration, score, depth + 1);
+        sw = new LeafTrie<>(minX, minY, midX, midY, configuration, score, depth + 1);
+        se = new LeafTrie<>(midX, minY, maxX, midY, configuration, score, depth + 1);
     }
 
     @Override
-    public Trie<T> insert(T point) {
-        Trie<T> quadrant = getQuadrant(point);
-        Trie<T> newQuadrant = quadrant.insert(point);
-        setQuadrant(point, newQuadrant);
+    Trie<T> insert(T point, double x, double y) {
+        Trie<T> quadrant = getQuadrant(x, y);
+        if (compressed && !quadrant.contains(x, y)) {
+            setQuadrant(x, y, expand(quadrant, point, x, y));
+            return this;
+        }
+        Trie<T> newQuadrant = quadrant.insert(point, x, y);
+        setQuadrant(x, y, newQuadrant);
         return this;
     }
 
     @Override
     public Trie<T> insertReplace(T point) {
         Trie<T> quadrant = getQuadrant(point);
+        if (compressed && !quadrant.contains(point.x(), point.y()))
+            return insert(point);
+
         Trie<T> newQuadrant = quadrant.insertReplace(point);
         setQuadrant(point, newQuadrant);
         return this;
     }
 
+    /**
+     * Com compressão, um quadrante pode ocupar apenas parte da sua célula.
+     * Para lhe juntar um ponto fora dela, cria um nó na menor célula
+     * alinhada (dentro da célula do quadrante) que contém ambos, com o
+     * quadrante antigo e o ponto em quadrantes diferentes.
+     */
+    private Trie<T> expand(Trie<T> quadrant, T point, double x, double y) {
+        double left = x < midX ? minX : midX, right = x < midX ? midX : maxX;
+        double bottom = y < midY ? minY : midY, top = y < midY ? midY : maxY;
+        double centerX = (quadrant.minX + quadrant.maxX) / 2, centerY = (quadrant.minY + quadrant.maxY) / 2;
+        int level = depth + 1;
+
+        while (true) {
+            double cellMidX = (left + right) / 2, cellMidY = (bottom + top) / 2;
+            boolean west = x < cellMidX, south = y < cellMidY;
+            if (west != centerX < cellMidX || south != centerY < cellMidY) break;
+
+            if (west) right = cellMidX; else left = cellMidX;
+            if (south) top = cellMidY; else bottom = cellMidY;
+            level++;
+        }
+
+        NodeTrie<T> node = new NodeTrie<>(left, bottom, right, top,
+                (left + right) / 2, (bottom + top) / 2, configuration, score, level);
+        node.setCompressedQuadrant(centerX, centerY, quadrant);
+        node.insert(point, x, y);
+        return node;
+    }
+
     @Override
     public boolean remove(T point) {
-        return getQuadrant(point).remove(point);
+        Trie<T> quadrant = getQuadrant(point);
+        boolean removed = quadrant.remove(point);
+        setQuadrant(point, quadrant.compact());
+        return removed;
     }
 
     @Override
     public void delete(T point) {
-        getQuadrant(point).delete(point);
+        Trie<T> quadrant = getQuadrant(point);
+        quadrant.delete(point);
+        setQuadrant(point, quadrant.compact());
+    }
+
+    @Override
+    public Trie<T> move(T point, double oldX, double oldY) {
+        Trie<T> from = getQuadrant(oldX, oldY);
+        Trie<T> to = getQuadrant(point);
+
+        if (from == to && (!compressed || to.contains(point.x(), point.y()))) {
+            Trie<T> moved = to.move(point, oldX, oldY);
+            if (moved == null) return null;
+            setQuadrant(point, moved);
+        } else {
+            if (!from.removeElement(point, oldX, oldY)) return null;
+            setQuadrant(oldX, oldY, from.compact());
+            insert(point);
+        }
+        return this;
+    }
+
+    @Override
+    boolean removeElement(T point, double x, double y) {
+        Trie<T> quadrant = getQuadrant(x, y);
+        boolean removed = quadrant.removeElement(point, x, y);
+        setQuadrant(x, y, quadrant.compact());
+        return removed;
+    }
+
+    /**
+     * Junta as folhas numa só quando o número de pontos desce a metade da
+     * capacidade. A margem entre este limite e o da divisão evita que uma
+     * trie se divida e junte repetidamente à volta da capacidade.
+     */
+    @Override
+    Trie<T> compact() {
+        if (count > configuration.getCapacity() / 2) return this;
+
+        Batch<T> all = new Batch<>(count);
+        collect(all);
+        LeafTrie<T> leaf = new LeafTrie<>(minX, minY, maxX, maxY, configuration, score, depth);
+        leaf.addAll(all);
+        return leaf;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Reparte os pontos pelos quadrantes (ainda folhas vazias) e constrói
+     * cada um deles recursivamente.
+     */
+    void build(Batch<T> batch) {
+        Batch<T> nwPoints = new Batch<>();
+        Batch<T> nePoints = new Batch<>();
+        Batch<T> swPoints = new Batch<>();
+        Batch<T> sePoints = new Batch<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            T point = batch.get(i);
+            double x = batch.getX(i), y = batch.getY(i);
+            switch (quadrantOf(x, y)) {
+                case NW -> nwPoints.add(point, x, y);
+                case NE -> nePoints.add(point, x, y);
+                case SW -> swPoints.add(point, x, y);
+                case SE -> sePoints.add(point, x, y);
+            }
+        }
+
+        nw = build(nw, nwPoints);
+        ne = build(ne, nePoints);
+        sw = build(sw, swPoints);
+        se = build(se, sePoints);
+        updateCount();
+    }
+
+    /**
+     * Os quadrantes de um nó acabado de criar são folhas vazias, exceto,
+     * com compressão, o quadrante comprimido criado na divisão.
+     */
+    private static <T extends HasPoint> Trie<T> build(Trie<T> quadrant, Batch<T> batch) {
+        if (quadrant instanceof LeafTrie<T> leaf)
+            return leaf.build(batch);
+
+        ((NodeTrie<T>) quadrant).build(batch);
+        return quadrant;
     }
 
     @Override
@@ -61,8 +208,20 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> {
         se.collect(out);
     }
 
+    @Override
+    void collect(Batch<T> batch) {
+        nw.collect(batch);
+        ne.collect(batch);
+        sw.collect(batch);
+        se.collect(batch);
+    }
+
     @Override
     public void collectNear(Location center, double radius, List<T> out) {
+        if (insideCircle(center.x(), center.y(), radius)) {
+            collect(out);
+            return;
+        }
         if (nw.overlaps(center, radius)) nw.collectNear(center, radius, out);
         if (ne.overlaps(center, radius)) ne.collectNear(center, radius, out);
         if (sw.overlaps(center, radius)) sw.collectNear(center, radius, out);
@@ -71,11 +230,14 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> {
 
     @Override
     public void collectNear(double x, double y, double radius, Set<T> result) {
-        Location center = new Location(x, y);
-        if (nw.overlaps(center, radius)) nw.collectNear(x, y, radius, result);
-        if (ne.overlaps(center, radius)) ne.collectNear(x, y, radius, result);
-        if (sw.overlaps(center, radius)) sw.collectNear(x, y, radius, result);
-        if (se.overlaps(center, radius)) se.collectNear(x, y, radius, result);
+        if (insideCircle(x, y, radius)) {
+            collectAll(result);
+            return;
+        }
+        if (nw.overlaps(x, y, radius)) nw.collectNear(x, y, radius, result);
+        if (ne.overlaps(x, y, radius)) ne.collectNear(x, y, radius, result);
+        if (sw.overlaps(x, y, radius)) sw.collectNear(x, y, radius, result);
+        if (se.overlaps(x, y, radius)) se.collectNear(x, y, radius, result);
     }
 
     @Override
@@ -86,10 +248,126 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> {
         se.collectAll(points);
     }
 
+    @Override
+    public void collectInBox(double left, double bottom, double right, double top, List<T> result) {
+        if (insideBox(left, bottom, right, top)) {
+            collect(result);
+            return;
+        }
+        if (nw.intersects(left, bottom, right, top)) nw.collectInBox(left, bottom, right, top, result);
+        if (ne.intersects(left, bottom, right, top)) ne.collectInBox(left, bottom, right, top, result);
+        if (sw.intersects(left, bottom, right, top)) sw.collectInBox(left, bottom, right, top, result);
+        if (se.intersects(left, bottom, right, top)) se.collectInBox(left, bottom, right, top, result);
+    }
+
+    @Override
+    public void collectInPolygon(Polygon polygon, List<T> result) {
+        if (insidePolygon(polygon)) {
+            collect(result);
+            return;
+        }
+        if (nw.intersects(polygon)) nw.collectInPolygon(polygon, result);
+        if (ne.intersects(polygon)) ne.collectInPolygon(polygon, result);
+        if (sw.intersects(polygon)) sw.collectInPolygon(polygon, result);
+        if (se.intersects(polygon)) se.collectInPolygon(polygon, result);
+    }
+
+    @Override
+    public int countNear(double x, double y, double radius) {
+        if (insideCircle(x, y, radius)) return count;
+
+        int result = 0;
+        if (nw.overlaps(x, y, radius)) result += nw.countNear(x, y, radius);
+        if (ne.overlaps(x, y, radius)) result += ne.countNear(x, y, radius);
+        if (sw.overlaps(x, y, radius)) result += sw.countNear(x, y, radius);
+        if (se.overlaps(x, y, radius)) result += se.countNear(x, y, radius);
+        return result;
+    }
+
+    @Override
+    public int countInBox(double left, double bottom, double right, double top) {
+        if (insideBox(left, bottom, right, top)) return count;
+
+        int result = 0;
+        if (nw.intersects(left, bottom, right, top)) result += nw.countInBox(left, bottom, right, top);
+        if (ne.intersects(left, bottom, right, top)) result += ne.countInBox(left, bottom, right, top);
+        if (sw.intersects(left, bottom, right, top)) result += sw.countInBox(left, bottom, right, top);
+        if (se.intersects(left, bottom, right, top)) result += se.countInBox(left, bottom, right, top);
+        return result;
+    }
+
+    @Override
+    public boolean forEachNear(double x, double y, double radius, Predicate<? super T> action) {
+        if (nw.overlaps(x, y, radius) && !nw.forEachNear(x, y, radius, action)) return false;
+        if (ne.overlaps(x, y, radius) && !ne.forEachNear(x, y, radius, action)) return false;
+        if (sw.overlaps(x, y, radius) && !sw.forEachNear(x, y, radius, action)) return false;
+        if (se.overlaps(x, y, radius) && !se.forEachNear(x, y, radius, action)) return false;
+        return true;
+    }
+
+    @Override
+    void collectNearest(NearestSearch<T> search) {
+        search.push(nw);
+        search.push(ne);
+        search.push(sw);
+        search.push(se);
+    }
+
+    @Override
+    double maxScore() {
+        return maxScore;
+    }
+
+    @Override
+    void collectTop(TopSearch<T> search) {
+        search.push(nw);
+        search.push(ne);
+        search.push(sw);
+        search.push(se);
+    }
+
+    /**
+     * Os centros cujo círculo cobre todo o nó recebem todos os pontos;
+     * os restantes descem apenas aos quadrantes que os seus círculos
+     * intersetam.
+     */
+    @Override
+    void collectNearBatch(double[] xs, double[] ys, double radius,
+                          int[] active, int activeCount, List<Set<T>> results) {
+        int[] partial = new int[activeCount];
+        int partialCount = 0;
+
+        for (int i = 0; i < activeCount; i++) {
+            int c = active[i];
+            if (insideCircle(xs[c], ys[c], radius)) collectAll(results.get(c));
+            else partial[partialCount++] = c;
+        }
+        if (partialCount == 0) return;
+
+        int[] selected = new int[partialCount];
+        collectNearBatch(nw, xs, ys, radius, partial, partialCount, selected, results);
+        collectNearBatch(ne, xs, ys, radius, partial, partialCount, selected, results);
+        collectNearBatch(sw, xs, ys, radius, partial, partialCount, selected, results);
+        collectNearBatch(se, xs, ys, radius, partial, partialCount, selected, results);
+    }
+
+    private static <T extends HasPoint> void collectNearBatch(Trie<T> quadrant,
+            double[] xs, double[] ys, double radius, int[] active, int activeCount,
+            int[] selected, List<Set<T>> results) {
+        int selectedCount = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int c = active[i];
+            if (quadrant.overlaps(xs[c], ys[c], radius)) selected[selectedCount++] = c;
+        }
+        if (selectedCount > 0)
+            quadrant.collectNearBatch(xs, ys, radius, selected, selectedCount, results);
+    }
+
     private Trie<T> getQuadrant(HasPoint point) {
-        double x = point.x();
-        double y = point.y();
+        return getQuadrant(point.x(), point.y());
+    }
 
+    private Trie<T> getQuadrant(double x, double y) {
         if (x < midX) {
             if (y < midY) return sw;
             else return nw;
@@ -99,10 +377,20 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> {
         }
     }
 
+    Trie<T> getQuadrant(Quadrant quadrant) {
+        return switch (quadrant) {
+            case NW -> nw;
+            case NE -> ne;
+            case SW -> sw;
+            case SE -> se;
+        };
+    }
+
     private void setQuadrant(HasPoint point, Trie<T> quadrant) {
-        double x = point.x();
-        double y = point.y();
+        setQuadrant(point.x(), point.y(), quadrant);
+    }
 
+    void setQuadrant(double x, double y, Trie<T> quadrant) {
         if (x < midX) {
             if (y < midY) sw = quadrant;
             else nw = quadrant;
@@ -110,6 +398,23 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> {
             if (y < midY) se = quadrant;
             else ne = quadrant;
         }
+        updateCount();
+    }
+
+    /**
+     * Coloca um quadrante que ocupa só parte da sua célula. O nó fica a
+     * saber que tem quadrantes comprimidos, mesmo que a compressão seja
+     * depois desligada na configuração.
+     */
+    void setCompressedQuadrant(double x, double y, Trie<T> quadrant) {
+        compressed = true;
+        setQuadrant(x, y, quadrant);
+    }
+
+    private void updateCount() {
+        count = nw.size() + ne.size() + sw.size() + se.size();
+        if (score != null)
+            maxScore = Math.max(Math.max(nw.maxScore(), ne.maxScore()), Math.max(sw.maxScore(), se.maxScore()));
     }
 
     @Override
@@ -118,9 +423,10 @@ public class NodeTrie<T extends HasPoint> extends Trie<T> {
     }
 
     public Quadrant quadrantOf(T point) {
-        double x = point.x();
-        double y = point.y();
+        return quadrantOf(point.x(), point.y());
+    }
 
+    private Quadrant quadrantOf(double x, double y) {
         if (x < midX) {
             return (y < midY) ? Quadrant.SW : Quadrant.NW;
         } else {
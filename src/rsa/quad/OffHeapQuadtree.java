@@ -0,0 +1,472 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Quadtree cuja estrutura fica fora da heap, num ByteBuffer direto.
+ * Cada nó é um registo de tamanho fixo no buffer, identificado pelo seu
+ * número: um nó interno guarda os números dos 4 quadrantes e uma folha
+ * guarda as coordenadas dos seus pontos e o handle (um inteiro) de cada
+ * um. Na heap ficam apenas os objetos indexados, num vetor indexado pelos
+ * handles. Os limites de cada célula não são guardados, são calculados
+ * durante a descida a partir dos limites da árvore.
+ *
+ * Uma folha que já não pode ser dividida (profundidade máxima, tamanho
+ * mínimo ou pontos coincidentes) encadeia folhas de overflow com a mesma
+ * célula. Tal como em PointQuadtree, os nós juntam-se numa folha quando o
+ * número de pontos desce a metade da capacidade.
+ *
+ * Da configuração são usadas a capacidade, a profundidade máxima e o
+ * tamanho mínimo. As células dividem-se sempre a meio, pelo que a política
+ * MEDIAN e a compressão são rejeitadas.
+ */
+public class OffHeapQuadtree<T extends HasPoint> implements SpatialIndex<T> {
+    private static final int INTERNAL = -1;
+    private static final int NONE = -1;
+
+    private static final int HEADER = 8;
+    private static final int SLOT = 20;
+
+    private final double minX, minY, maxX, maxY;
+    private final Configuration configuration;
+    private final int capacity;
+    private final int recordBytes;
+
+    private ByteBuffer nodes;
+    private int nodeCount;
+    private int[] freeNodes = new int[16];
+    private int freeNodeCount;
+
+    private Object[] elements = new Object[16];
+    private int handleCount;
+    private int[] freeHandles = new int[16];
+    private int freeHandleCount;
+
+    private int size;
+    private final int root;
+
+    public OffHeapQuadtree(double minX, double minY, double maxX, double maxY) {
+        this(minX, minY, maxX, maxY, new Configuration());
+    }
+
+    public OffHeapQuadtree(double minX, double minY, double maxX, double maxY, Configuration configuration) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        if (configuration.getSplitPolicy() != Configuration.SplitPolicy.MIDPOINT || configuration.isCompressed())
+            throw new IllegalArgumentException("Off-heap quadtree only supports uncompressed midpoint splits");
+
+        this.configuration = new Configuration(configuration);
+        this.capacity = Math.max(1, this.configuration.getCapacity());
+        this.recordBytes = HEADER + Math.max(4 * Integer.BYTES, capacity * SLOT);
+
+        nodes = ByteBuffer.allocateDirect(64 * recordBytes).order(ByteOrder.nativeOrder());
+        root = newLeaf();
+    }
+
+    public Configuration getConfiguration() {
+        return new Configuration(configuration);
+    }
+
+    @Override
+    public void insert(T point) {
+        if (!inside(point.x(), point.y()))
+            throw new PointOutOfBoundException(point);
+
+        insert(root, minX, minY, maxX, maxY, 0, point.x(), point.y(), newHandle(point));
+        size++;
+    }
+
+    @Override
+    public boolean remove(T point) {
+        return removeAt(point, point.x(), point.y());
+    }
+
+    @Override
+    public void move(T point, double oldX, double oldY) {
+        if (!inside(point.x(), point.y()))
+            throw new PointOutOfBoundException(point);
+
+        removeAt(point, oldX, oldY);
+        insert(point);
+    }
+
+    private boolean removeAt(T point, double x, double y) {
+        if (!inside(x, y)) return false;
+
+        int handle = remove(root, minX, minY, maxX, maxY, x, y, point);
+        if (handle == NONE) return false;
+
+        freeHandle(handle);
+        size--;
+        return true;
+    }
+
+    @Override
+    public Set<T> findNear(double x, double y, double radius) {
+        Set<T> result = new HashSet<>();
+        forEachNear(x, y, radius, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        forEachNear(root, minX, minY, maxX, maxY, x, y, radius * radius, action);
+    }
+
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        List<T> result = new ArrayList<>();
+        collectInBox(root, minX, minY, maxX, maxY, left, bottom, right, top, result);
+        return result;
+    }
+
+    @Override
+    public List<T> getAll() {
+        List<T> result = new ArrayList<>(size);
+        collectInBox(root, minX, minY, maxX, maxY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, result);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return getAll().iterator();
+    }
+
+    public boolean inside(HasPoint point) {
+        return inside(point.x(), point.y());
+    }
+
+    private boolean inside(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Número de registos de nós em uso (para medir a ocupação do buffer).
+     */
+    int nodeCount() {
+        return nodeCount - freeNodeCount;
+    }
+
+    private void insert(int node, double minX, double minY, double maxX, double maxY, int depth,
+                        double x, double y, int handle) {
+        while (count(node) == INTERNAL) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            int quadrant = Configuration.quadrant(x, y, midX, midY);
+            node = child(node, quadrant);
+            if (quadrant == 0 || quadrant == 2) maxX = midX; else minX = midX;
+            if (quadrant == 2 || quadrant == 3) maxY = midY; else minY = midY;
+            depth++;
+        }
+
+        int last = lastInChain(node);
+        if (count(last) < capacity) {
+            setSlot(last, count(last), x, y, handle);
+            setCount(last, count(last) + 1);
+        } else if (!configuration.canSplit(minX, minY, maxX, maxY, depth) || coincident(node, x, y)) {
+            int overflow = newLeaf();
+            setNext(last, overflow);
+            setSlot(overflow, 0, x, y, handle);
+            setCount(overflow, 1);
+        } else {
+            split(node, minX, minY, maxX, maxY, depth);
+            insert(node, minX, minY, maxX, maxY, depth, x, y, handle);
+        }
+    }
+
+    /**
+     * Transforma a folha (e as suas folhas de overflow) num nó interno com
+     * 4 folhas vazias e volta a inserir os pontos que tinha.
+     */
+    private void split(int node, double minX, double minY, double maxX, double maxY, int depth) {
+        int total = chainSize(node);
+        double[] xs = new double[total], ys = new double[total];
+        int[] handles = new int[total];
+        int n = 0;
+
+        for (int leaf = node; leaf != NONE; leaf = next(leaf)) {
+            for (int i = 0; i < count(leaf); i++, n++) {
+                xs[n] = slotX(leaf, i);
+                ys[n] = slotY(leaf, i);
+                handles[n] = slotHandle(leaf, i);
+            }
+        }
+        freeChain(next(node));
+
+        int[] children = {newLeaf(), newLeaf(), newLeaf(), newLeaf()};
+        setCount(node, INTERNAL);
+        setNext(node, NONE);
+        for (int q = 0; q < 4; q++) setChild(node, q, children[q]);
+
+        for (int i = 0; i < total; i++)
+            insert(node, minX, minY, maxX, maxY, depth, xs[i], ys[i], handles[i]);
+    }
+
+    /**
+     * Remove o objeto nestas coordenadas e devolve o seu handle, ou NONE
+     * se não estiver na trie.
+     */
+    private int remove(int node, double minX, double minY, double maxX, double maxY,
+                       double x, double y, T point) {
+        if (count(node) == INTERNAL) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            int quadrant = Configuration.quadrant(x, y, midX, midY);
+            int handle = remove(child(node, quadrant),
+                    quadrant == 0 || quadrant == 2 ? minX : midX,
+                    quadrant == 2 || quadrant == 3 ? minY : midY,
+                    quadrant == 0 || quadrant == 2 ? midX : maxX,
+                    quadrant == 2 || quadrant == 3 ? midY : maxY,
+                    x, y, point);
+            if (handle != NONE) compact(node);
+            return handle;
+        }
+
+        for (int leaf = node; leaf != NONE; leaf = next(leaf)) {
+            for (int i = 0; i < count(leaf); i++) {
+                int handle = slotHandle(leaf, i);
+                if (elements[handle] == point && slotX(leaf, i) == x && slotY(leaf, i) == y) {
+                    removeSlot(node, leaf, i);
+                    return handle;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Preenche a posição libertada com o último ponto da cadeia de folhas,
+     * libertando a última folha de overflow se ficar vazia.
+     */
+    private void removeSlot(int head, int leaf, int index) {
+        int previous = NONE, last = head;
+        while (next(last) != NONE) {
+            previous = last;
+            last = next(last);
+        }
+
+        int lastIndex = count(last) - 1;
+        setSlot(leaf, index, slotX(last, lastIndex), slotY(last, lastIndex), slotHandle(last, lastIndex));
+        setCount(last, lastIndex);
+
+        if (lastIndex == 0 && previous != NONE) {
+            setNext(previous, NONE);
+            freeNode(last);
+        }
+    }
+
+    /**
+     * Junta os quadrantes numa só folha quando são todos folhas sem
+     * overflow e têm no total até metade da capacidade.
+     */
+    private void compact(int node) {
+        int total = 0;
+        for (int q = 0; q < 4; q++) {
+            int child = child(node, q);
+            if (count(child) == INTERNAL || next(child) != NONE) return;
+            total += count(child);
+        }
+        if (total > capacity / 2) return;
+
+        int[] children = new int[4];
+        for (int q = 0; q < 4; q++) children[q] = child(node, q);
+
+        int n = 0;
+        for (int child : children) {
+            for (int i = 0; i < count(child); i++, n++)
+                setSlot(node, n, slotX(child, i), slotY(child, i), slotHandle(child, i));
+            freeNode(child);
+        }
+        setCount(node, n);
+        setNext(node, NONE);
+    }
+
+    private void forEachNear(int node, double minX, double minY, double maxX, double maxY,
+                             double x, double y, double r2, Consumer<? super T> action) {
+        double dx = Math.max(minX, Math.min(x, maxX)) - x;
+        double dy = Math.max(minY, Math.min(y, maxY)) - y;
+        if (dx * dx + dy * dy > r2) return;
+
+        if (count(node) == INTERNAL) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            forEachNear(child(node, 0), minX, midY, midX, maxY, x, y, r2, action);
+            forEachNear(child(node, 1), midX, midY, maxX, maxY, x, y, r2, action);
+            forEachNear(child(node, 2), minX, minY, midX, midY, x, y, r2, action);
+            forEachNear(child(node, 3), midX, minY, maxX, midY, x, y, r2, action);
+            return;
+        }
+
+        for (int leaf = node; leaf != NONE; leaf = next(leaf)) {
+            for (int i = 0; i < count(leaf); i++) {
+                double px = slotX(leaf, i) - x, py = slotY(leaf, i) - y;
+                if (px * px + py * py <= r2) action.accept(element(slotHandle(leaf, i)));
+            }
+        }
+    }
+
+    private void collectInBox(int node, double minX, double minY, double maxX, double maxY,
+                              double left, double bottom, double right, double top, List<T> result) {
+        if (minX > right || maxX < left || minY > top || maxY < bottom) return;
+
+        if (count(node) == INTERNAL) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            collectInBox(child(node, 0), minX, midY, midX, maxY, left, bottom, right, top, result);
+            collectInBox(child(node, 1), midX, midY, maxX, maxY, left, bottom, right, top, result);
+            collectInBox(child(node, 2), minX, minY, midX, midY, left, bottom, right, top, result);
+            collectInBox(child(node, 3), midX, minY, maxX, midY, left, bottom, right, top, result);
+            return;
+        }
+
+        for (int leaf = node; leaf != NONE; leaf = next(leaf)) {
+            for (int i = 0; i < count(leaf); i++) {
+                double px = slotX(leaf, i), py = slotY(leaf, i);
+                if (px >= left && px <= right && py >= bottom && py <= top)
+                    result.add(element(slotHandle(leaf, i)));
+            }
+        }
+    }
+
+    private boolean coincident(int node, double x, double y) {
+        for (int leaf = node; leaf != NONE; leaf = next(leaf)) {
+            for (int i = 0; i < count(leaf); i++) {
+                if (slotX(leaf, i) != x || slotY(leaf, i) != y) return false;
+            }
+        }
+        return true;
+    }
+
+    private int chainSize(int node) {
+        int total = 0;
+        for (int leaf = node; leaf != NONE; leaf = next(leaf)) total += count(leaf);
+        return total;
+    }
+
+    private int lastInChain(int node) {
+        while (next(node) != NONE) node = next(node);
+        return node;
+    }
+
+    private void freeChain(int node) {
+        while (node != NONE) {
+            int following = next(node);
+            freeNode(node);
+            node = following;
+        }
+    }
+
+    // Registos no buffer
+
+    private int newLeaf() {
+        int node;
+        if (freeNodeCount > 0) {
+            node = freeNodes[--freeNodeCount];
+        } else {
+            node = nodeCount++;
+            if ((long) nodeCount * recordBytes > nodes.capacity()) {
+                long length = Math.max((long) nodeCount * recordBytes, 2L * nodes.capacity());
+                if (length > Integer.MAX_VALUE)
+                    throw new IllegalStateException("Off-heap quadtree is full");
+
+                ByteBuffer larger = ByteBuffer.allocateDirect((int) length).order(ByteOrder.nativeOrder());
+                larger.put(nodes.clear());
+                nodes = larger;
+            }
+        }
+        setCount(node, 0);
+        setNext(node, NONE);
+        return node;
+    }
+
+    private void freeNode(int node) {
+        if (freeNodeCount == freeNodes.length)
+            freeNodes = Arrays.copyOf(freeNodes, 2 * freeNodes.length);
+        freeNodes[freeNodeCount++] = node;
+    }
+
+    private int count(int node) {
+        return nodes.getInt(node * recordBytes);
+    }
+
+    private void setCount(int node, int count) {
+        nodes.putInt(node * recordBytes, count);
+    }
+
+    private int next(int node) {
+        return nodes.getInt(node * recordBytes + 4);
+    }
+
+    private void setNext(int node, int next) {
+        nodes.putInt(node * recordBytes + 4, next);
+    }
+
+    private int child(int node, int quadrant) {
+        return nodes.getInt(node * recordBytes + HEADER + 4 * quadrant);
+    }
+
+    private void setChild(int node, int quadrant, int child) {
+        nodes.putInt(node * recordBytes + HEADER + 4 * quadrant, child);
+    }
+
+    private double slotX(int node, int index) {
+        return nodes.getDouble(node * recordBytes + HEADER + index * SLOT);
+    }
+
+    private double slotY(int node, int index) {
+        return nodes.getDouble(node * recordBytes + HEADER + index * SLOT + 8);
+    }
+
+    private int slotHandle(int node, int index) {
+        return nodes.getInt(node * recordBytes + HEADER + index * SLOT + 16);
+    }
+
+    private void setSlot(int node, int index, double x, double y, int handle) {
+        int offset = node * recordBytes + HEADER + index * SLOT;
+        nodes.putDouble(offset, x);
+        nodes.putDouble(offset + 8, y);
+        nodes.putInt(offset + 16, handle);
+    }
+
+    // Handles na heap
+
+    private int newHandle(T point) {
+        int handle;
+        if (freeHandleCount > 0) {
+            handle = freeHandles[--freeHandleCount];
+        } else {
+            if (handleCount == elements.length)
+                elements = Arrays.copyOf(elements, 2 * elements.length);
+            handle = handleCount++;
+        }
+        elements[handle] = point;
+        return handle;
+    }
+
+    private void freeHandle(int handle) {
+        elements[handle] = null;
+        if (freeHandleCount == freeHandles.length)
+            freeHandles = Arrays.copyOf(freeHandles, 2 * freeHandles.length);
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T element(int handle) {
+        return (T) elements[handle];
+    }
+}
@@ -0,0 +1,393 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Quadtree imutável: insert, remove e move não alteram esta árvore,
+ * devolvem uma nova que partilha com ela todas as subárvores fora do
+ * caminho alterado (cópia do caminho). Uma instância pode assim ser lida
+ * por qualquer número de threads, sem locks, enquanto outra produz as
+ * versões seguintes. Os nós são próprios desta classe, imutáveis, e os
+ * limites de cada célula são calculados durante a descida.
+ *
+ * Tal como em PointQuadtree, as folhas dividem-se a meio acima da
+ * capacidade (salvo se não puderem ou se os pontos coincidirem) e os nós
+ * juntam-se numa folha quando o número de pontos desce a metade. Como as
+ * divisões são sempre a meio, a política MEDIAN e a compressão da
+ * configuração são rejeitadas.
+ */
+public class PersistentQuadtree<T extends HasPoint> implements Iterable<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double minX, minY, maxX, maxY;
+    private final Configuration configuration;
+    private final Node root;
+
+    public PersistentQuadtree(double minX, double minY, double maxX, double maxY) {
+        this(minX, minY, maxX, maxY, new Configuration());
+    }
+
+    public PersistentQuadtree(double minX, double minY, double maxX, double maxY, Configuration configuration) {
+        this(minX, minY, maxX, maxY, supported(configuration), Leaf.EMPTY);
+    }
+
+    private static Configuration supported(Configuration configuration) {
+        if (configuration.getSplitPolicy() != Configuration.SplitPolicy.MIDPOINT || configuration.isCompressed())
+            throw new IllegalArgumentException("Persistent quadtree only supports uncompressed midpoint splits");
+
+        return new Configuration(configuration);
+    }
+
+    private PersistentQuadtree(double minX, double minY, double maxX, double maxY,
+                               Configuration configuration, Node root) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.configuration = configuration;
+        this.root = root;
+    }
+
+    /**
+     * Cópia da configuração, partilhada por todas as versões da árvore.
+     */
+    public Configuration getConfiguration() {
+        return new Configuration(configuration);
+    }
+
+    /**
+     * Devolve uma nova árvore com o ponto dado.
+     */
+    public PersistentQuadtree<T> insert(T point) {
+        if (!inside(point.x(), point.y()))
+            throw new PointOutOfBoundException(point);
+
+        return with(root.insert(this, minX, minY, maxX, maxY, 0, point));
+    }
+
+    /**
+     * Devolve uma nova árvore sem este objeto (por identidade), procurado
+     * nas suas coordenadas atuais, ou esta árvore se ele não estiver nela.
+     */
+    public PersistentQuadtree<T> remove(T point) {
+        return removeAt(point, point.x(), point.y());
+    }
+
+    /**
+     * Devolve uma nova árvore em que o ponto, indexado em (oldX,oldY),
+     * está nas suas coordenadas atuais.
+     */
+    public PersistentQuadtree<T> move(T point, double oldX, double oldY) {
+        if (!inside(point.x(), point.y()))
+            throw new PointOutOfBoundException(point);
+
+        return removeAt(point, oldX, oldY).insert(point);
+    }
+
+    private PersistentQuadtree<T> removeAt(T point, double x, double y) {
+        if (!inside(x, y)) return this;
+
+        Node removed = root.remove(this, minX, minY, maxX, maxY, x, y, point);
+        return removed == root ? this : with(removed);
+    }
+
+    private PersistentQuadtree<T> with(Node root) {
+        return new PersistentQuadtree<>(minX, minY, maxX, maxY, configuration, root);
+    }
+
+    public Set<T> findNear(double x, double y, double radius) {
+        Set<T> result = new HashSet<>();
+        forEachNear(x, y, radius, result::add);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        root.forEachNear(minX, minY, maxX, maxY, x, y, radius * radius, point -> action.accept((T) point));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        List<T> result = new ArrayList<>();
+        root.forEachInBox(minX, minY, maxX, maxY, left, bottom, right, top, point -> result.add((T) point));
+        return result;
+    }
+
+    public List<T> getAll() {
+        return findInBox(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    public int size() {
+        return root.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return getAll().iterator();
+    }
+
+    public boolean inside(HasPoint point) {
+        return inside(point.x(), point.y());
+    }
+
+    private boolean inside(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Constrói a subárvore com estes pontos, dividindo-a enquanto exceder
+     * a capacidade e puder ser dividida.
+     */
+    private Node build(HasPoint[] points, int count,
+                       double minX, double minY, double maxX, double maxY, int depth) {
+        if (count <= configuration.getCapacity() || !configuration.canSplit(minX, minY, maxX, maxY, depth) ||
+                Leaf.allCoincident(points, count))
+            return Leaf.of(points, count);
+
+        double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+        HasPoint[][] parts = new HasPoint[4][count];
+        int[] counts = new int[4];
+        for (int i = 0; i < count; i++) {
+            int quadrant = Configuration.quadrant(points[i].x(), points[i].y(), midX, midY);
+            parts[quadrant][counts[quadrant]++] = points[i];
+        }
+
+        Node[] children = new Node[4];
+        for (int q = 0; q < 4; q++)
+            children[q] = build(parts[q], counts[q], west(q) ? minX : midX, south(q) ? minY : midY,
+                    west(q) ? midX : maxX, south(q) ? midY : maxY, depth + 1);
+        return new Branch(children, count);
+    }
+
+    private static boolean west(int quadrant) {
+        return quadrant == 0 || quadrant == 2;
+    }
+
+    private static boolean south(int quadrant) {
+        return quadrant == 2 || quadrant == 3;
+    }
+
+    private static boolean overlaps(double minX, double minY, double maxX, double maxY,
+                                    double x, double y, double r2) {
+        double dx = Math.max(minX, Math.min(x, maxX)) - x;
+        double dy = Math.max(minY, Math.min(y, maxY)) - y;
+        return dx * dx + dy * dy <= r2;
+    }
+
+    private abstract static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        abstract int size();
+
+        abstract Node insert(PersistentQuadtree<?> tree, double minX, double minY, double maxX, double maxY,
+                             int depth, HasPoint point);
+
+        /**
+         * Devolve este nó se o ponto não estiver na subárvore.
+         */
+        abstract Node remove(PersistentQuadtree<?> tree, double minX, double minY, double maxX, double maxY,
+                             double x, double y, HasPoint point);
+
+        abstract void collect(HasPoint[] points, int from);
+
+        abstract void forEachNear(double minX, double minY, double maxX, double maxY,
+                                  double x, double y, double r2, Consumer<HasPoint> action);
+
+        abstract void forEachInBox(double minX, double minY, double maxX, double maxY,
+                                   double left, double bottom, double right, double top,
+                                   Consumer<HasPoint> action);
+    }
+
+    private static final class Leaf extends Node {
+        private static final long serialVersionUID = 1L;
+        static final Leaf EMPTY = new Leaf(new HasPoint[0], new double[0], new double[0]);
+
+        private final HasPoint[] elements;
+        private final double[] xs, ys;
+
+        private Leaf(HasPoint[] elements, double[] xs, double[] ys) {
+            this.elements = elements;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        static Leaf of(HasPoint[] points, int count) {
+            HasPoint[] elements = Arrays.copyOf(points, count);
+            double[] xs = new double[count], ys = new double[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = elements[i].x();
+                ys[i] = elements[i].y();
+            }
+            return new Leaf(elements, xs, ys);
+        }
+
+        static boolean allCoincident(HasPoint[] points, int count) {
+            for (int i = 1; i < count; i++) {
+                if (points[i].x() != points[0].x() || points[i].y() != points[0].y()) return false;
+            }
+            return true;
+        }
+
+        @Override
+        int size() {
+            return elements.length;
+        }
+
+        @Override
+        Node insert(PersistentQuadtree<?> tree, double minX, double minY, double maxX, double maxY,
+                    int depth, HasPoint point) {
+            int size = elements.length;
+            HasPoint[] points = Arrays.copyOf(elements, size + 1);
+            points[size] = point;
+
+            if (size < tree.configuration.getCapacity()) {
+                double[] newXs = Arrays.copyOf(xs, size + 1), newYs = Arrays.copyOf(ys, size + 1);
+                newXs[size] = point.x();
+                newYs[size] = point.y();
+                return new Leaf(points, newXs, newYs);
+            }
+            return tree.build(points, size + 1, minX, minY, maxX, maxY, depth);
+        }
+
+        @Override
+        Node remove(PersistentQuadtree<?> tree, double minX, double minY, double maxX, double maxY,
+                    double x, double y, HasPoint point) {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i] == point && xs[i] == x && ys[i] == y) {
+                    int size = elements.length - 1;
+                    HasPoint[] newElements = Arrays.copyOf(elements, size);
+                    double[] newXs = Arrays.copyOf(xs, size), newYs = Arrays.copyOf(ys, size);
+                    if (i < size) {
+                        newElements[i] = elements[size];
+                        newXs[i] = xs[size];
+                        newYs[i] = ys[size];
+                    }
+                    return new Leaf(newElements, newXs, newYs);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        void collect(HasPoint[] points, int from) {
+            System.arraycopy(elements, 0, points, from, elements.length);
+        }
+
+        @Override
+        void forEachNear(double minX, double minY, double maxX, double maxY,
+                         double x, double y, double r2, Consumer<HasPoint> action) {
+            for (int i = 0; i < elements.length; i++) {
+                double dx = xs[i] - x, dy = ys[i] - y;
+                if (dx * dx + dy * dy <= r2) action.accept(elements[i]);
+            }
+        }
+
+        @Override
+        void forEachInBox(double minX, double minY, double maxX, double maxY,
+                          double left, double bottom, double right, double top,
+                          Consumer<HasPoint> action) {
+            for (int i = 0; i < elements.length; i++) {
+                if (xs[i] >= left && xs[i] <= right && ys[i] >= bottom && ys[i] <= top)
+                    action.accept(elements[i]);
+            }
+        }
+    }
+
+    private static final class Branch extends Node {
+        private static final long serialVersionUID = 1L;
+
+        private final Node[] children;
+        private final int count;
+
+        private Branch(Node[] children, int count) {
+            this.children = children;
+            this.count = count;
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        Node insert(PersistentQuadtree<?> tree, double minX, double minY, double maxX, double maxY,
+                    int depth, HasPoint point) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            int q = Configuration.quadrant(point.x(), point.y(), midX, midY);
+
+            Node[] copy = children.clone();
+            copy[q] = children[q].insert(tree, west(q) ? minX : midX, south(q) ? minY : midY,
+                    west(q) ? midX : maxX, south(q) ? midY : maxY, depth + 1, point);
+            return new Branch(copy, count + 1);
+        }
+
+        /**
+         * Junta a subárvore numa folha quando o número de pontos desce a
+         * metade da capacidade.
+         */
+        @Override
+        Node remove(PersistentQuadtree<?> tree, double minX, double minY, double maxX, double maxY,
+                    double x, double y, HasPoint point) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            int q = Configuration.quadrant(x, y, midX, midY);
+
+            Node child = children[q].remove(tree, west(q) ? minX : midX, south(q) ? minY : midY,
+                    west(q) ? midX : maxX, south(q) ? midY : maxY, x, y, point);
+            if (child == children[q]) return this;
+
+            Node[] copy = children.clone();
+            copy[q] = child;
+            Branch branch = new Branch(copy, count - 1);
+            if (branch.count > tree.configuration.getCapacity() / 2) return branch;
+
+            HasPoint[] points = new HasPoint[branch.count];
+            branch.collect(points, 0);
+            return Leaf.of(points, points.length);
+        }
+
+        @Override
+        void collect(HasPoint[] points, int from) {
+            for (Node child : children) {
+                child.collect(points, from);
+                from += child.size();
+            }
+        }
+
+        @Override
+        void forEachNear(double minX, double minY, double maxX, double maxY,
+                         double x, double y, double r2, Consumer<HasPoint> action) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            for (int q = 0; q < 4; q++) {
+                double left = west(q) ? minX : midX, right = west(q) ? midX : maxX;
+                double bottom = south(q) ? minY : midY, top = south(q) ? midY : maxY;
+                if (children[q].size() > 0 && overlaps(left, bottom, right, top, x, y, r2))
+                    children[q].forEachNear(left, bottom, right, top, x, y, r2, action);
+            }
+        }
+
+        @Override
+        void forEachInBox(double minX, double minY, double maxX, double maxY,
+                          double left, double bottom, double right, double top,
+                          Consumer<HasPoint> action) {
+            double midX = (minX + maxX) / 2, midY = (minY + maxY) / 2;
+            for (int q = 0; q < 4; q++) {
+                double cellLeft = west(q) ? minX : midX, cellRight = west(q) ? midX : maxX;
+                double cellBottom = south(q) ? minY : midY, cellTop = south(q) ? midY : maxY;
+                if (children[q].size() > 0 && cellLeft <= right && cellRight >= left &&
+                        cellBottom <= top && cellTop >= bottom)
+                    children[q].forEachInBox(cellLeft, cellBottom, cellRight, cellTop,
+                            left, bottom, right, top, action);
+            }
+        }
+    }
+}
@@ -5,28 +5,59 @@ import rsa.match.Location;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Representa uma quadtree que guarda objetos que têm um ponto (x,y),
  * isto é, que implementam HasPoint.
  */
-public class PointQuadtree<T extends HasPoint> implements Iterable<T>, Serializable {
+public class PointQuadtree<T extends HasPoint> implements SpatialIndex<T>, Serializable {
 
     private static final long serialVersionUID = 1L;
 
     private Trie<T> root;
-    private final double minX, minY, maxX, maxY;
+    private double minX, minY, maxX, maxY;
+    private Map<T, Location> positions;
+    private boolean growable;
 
     public PointQuadtree(double minX, double minY, double maxX, double maxY) {
+        this(minX, minY, maxX, maxY, new Configuration());
+    }
+
+    /**
+     * Cria uma quadtree com uma cópia da configuração dada, para que
+     * alterações posteriores a esta não afetem a árvore.
+     */
+    public PointQuadtree(double minX, double minY, double maxX, double maxY, Configuration configuration) {
+        this(minX, minY, maxX, maxY, configuration, null);
+    }
+
+    /**
+     * Cria uma quadtree que mantém em cada nó o máximo do atributo dado,
+     * para as pesquisas dos melhores pontos numa região (findTopNear).
+     * Para preferir valores baixos (por exemplo, o custo) usa-se o
+     * simétrico. Se o valor de um ponto mudar, o ponto tem de ser
+     * reposicionado (move) para atualizar os máximos.
+     */
+    public PointQuadtree(double minX, double minY, double maxX, double maxY,
+                         Configuration configuration, Score<? super T> score) {
         this.minX = minX;
         this.minY = minY;
         this.maxX = maxX;
         this.maxY = maxY;
-        root = new LeafTrie<>(minX, minY, maxX, maxY);
+        root = new LeafTrie<>(minX, minY, maxX, maxY, new Configuration(configuration), score, 0);
     }
 
     public PointQuadtree(double width, double height) {
@@ -37,18 +68,143 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T>, Serializa
         this(-margin, -margin, width + margin, height + margin);
     }
 
+    /**
+     * Ativa ou desativa o índice de identidade, que guarda a posição em que
+     * cada objeto foi indexado. Com ele, remove() e delete() retiram apenas
+     * o próprio objeto (e não todos os que partilham as suas coordenadas),
+     * sem que seja preciso conhecer a posição em que foi inserido. Ao ativar,
+     * regista as coordenadas guardadas nas folhas, que para um objeto ainda
+     * por reposicionar não são as atuais.
+     */
+    public void setIdentityIndexed(boolean identityIndexed) {
+        if (!identityIndexed) {
+            positions = null;
+        } else if (positions == null) {
+            Batch<T> all = new Batch<>(root.size());
+            root.collect(all);
+            positions = new IdentityHashMap<>();
+            for (int i = 0; i < all.size(); i++)
+                positions.put(all.get(i), new Location(all.getX(i), all.getY(i)));
+        }
+    }
+
+    public boolean isIdentityIndexed() {
+        return positions != null;
+    }
+
+    /**
+     * Numa quadtree extensível, um ponto fora dos limites não lança
+     * PointOutOfBoundException: a raiz passa a ser um quadrante de uma
+     * raiz com o dobro do tamanho, até o ponto ficar dentro dos limites.
+     */
+    public void setGrowable(boolean growable) {
+        this.growable = growable;
+    }
+
+    public boolean isGrowable() {
+        return growable;
+    }
+
+    /**
+     * Cópia da configuração desta quadtree. A forma da árvore fica fixada
+     * na criação; alterar a cópia não a afeta (ver setCapacity).
+     */
+    public Configuration getConfiguration() {
+        return new Configuration(root.configuration);
+    }
+
+    /**
+     * Altera a capacidade das folhas, a única parte da configuração que
+     * pode mudar depois de criada a quadtree. Aplica-se às divisões e
+     * junções de tries feitas a partir desse momento.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive");
+
+        root.configuration.setCapacity(capacity);
+    }
+
+    @Override
     public void insert(T point) {
-        if (!inside(point))
-            throw new PointOutOfBoundException(point);
+        ensureInside(point);
 
+        if (positions != null && positions.containsKey(point)) {
+            move(point);
+            return;
+        }
         root = root.insert(point);
+        index(point);
+    }
+
+    /**
+     * Insere uma coleção de pontos de uma só vez, reconstruindo a árvore
+     * numa única passagem: os pontos são repartidos pelos quadrantes nível
+     * a nível, sem as divisões sucessivas de folhas de inserções isoladas.
+     */
+    public void bulkLoad(Collection<T> points) {
+        for (T point : points) ensureInside(point);
+
+        if (positions != null) {
+            for (T point : points) unindex(point);
+        }
+
+        Batch<T> all = new Batch<>(root.size() + points.size());
+        root.collect(all);
+        for (T point : points) all.add(point);
+        root = new LeafTrie<T>(minX, minY, maxX, maxY, root.configuration, root.score, root.depth).build(all);
+
+        if (positions != null) {
+            for (T point : points) index(point);
+        }
     }
 
     public void insertReplace(T point) {
-        if (!inside(point))
-            throw new PointOutOfBoundException(point);
+        ensureInside(point);
+
+        if (positions == null) {
+            root = root.insertReplace(point);
+        } else {
+            for (T other : findNear(point.x(), point.y(), 0)) unindex(other);
+            insert(point);
+        }
+    }
+
+    /**
+     * Reposiciona um ponto que estava indexado em (oldX,oldY) e cujas
+     * coordenadas mudaram. Só desce até ao antecessor comum das duas
+     * posições, sem remover e reinserir a partir da raiz. Com índice de
+     * identidade, a posição registada prevalece sobre (oldX,oldY).
+     */
+    @Override
+    public void move(T point, double oldX, double oldY) {
+        if (positions != null)
+            move(point);
+        else
+            relocate(point, oldX, oldY);
+    }
+
+    /**
+     * Reposiciona um ponto usando a posição registada no índice de
+     * identidade. Se o ponto ainda não estiver na quadtree é inserido.
+     */
+    public void move(T point) {
+        if (positions == null)
+            throw new IllegalStateException("Quadtree without identity index");
 
-        root = root.insertReplace(point);
+        Location previous = positions.get(point);
+        if (previous == null)
+            insert(point);
+        else
+            relocate(point, previous.x(), previous.y());
+    }
+
+    private void relocate(T point, double oldX, double oldY) {
+        ensureInside(point);
+
+        Trie<T> moved = inside(oldX, oldY) ? root.move(point, oldX, oldY) : null;
+        root = moved == null ? root.insert(point) : moved.compact();
+        index(point);
     }
 
     public void collectNear(Location center, double radius, List<T> result) {
@@ -57,18 +213,64 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T>, Serializa
         }
     }
 
+    /**
+     * Sem índice de identidade, o objeto é procurado nas suas coordenadas
+     * atuais (delete() remove todos os que tenham essas coordenadas).
+     */
+    @Override
     public boolean remove(T point) {
-        return root.remove(point);
+        if (positions != null)
+            return unindex(point);
+        if (!inside(point)) return false;
+
+        boolean removed = root.removeElement(point, point.x(), point.y());
+        root = root.compact();
+        return removed;
     }
 
     public void delete(T point) {
+        if (positions != null) {
+            unindex(point);
+            return;
+        }
         root.delete(point);
+        root = root.compact();
     }
 
     public T find(T point) {
         return root.find(point);
     }
 
+    /**
+     * Verifica se este objeto (por identidade) está na quadtree.
+     */
+    public boolean contains(T point) {
+        if (positions != null)
+            return positions.containsKey(point);
+
+        for (T other : findNear(point.x(), point.y(), 0)) {
+            if (other == point) return true;
+        }
+        return false;
+    }
+
+    private void index(T point) {
+        if (positions != null)
+            positions.put(point, new Location(point.x(), point.y()));
+    }
+
+    /**
+     * Remove o objeto da posição registada no índice de identidade.
+     */
+    private boolean unindex(T point) {
+        Location position = positions.remove(point);
+        if (position == null) return false;
+
+        root.removeElement(point, position.x(), position.y());
+        root = root.compact();
+        return true;
+    }
+
     public List<T> findNear(Location center, double radius) {
         List<T> result = new ArrayList<>();
         if (root.overlaps(center, radius))
@@ -76,18 +278,183 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T>, Serializa
         return result;
     }
 
+    @Override
     public Set<T> findNear(double x, double y, double radius) {
         Set<T> result = new HashSet<>();
-        if (root.overlaps(new Location(x, y), radius))
+        if (root.overlaps(x, y, radius))
             root.collectNear(x, y, radius, result);
         return result;
     }
 
+    /**
+     * Número de pontos a uma distância de (x,y) não superior ao raio,
+     * sem criar o conjunto desses pontos.
+     */
+    public int countNear(double x, double y, double radius) {
+        return root.overlaps(x, y, radius) ? root.countNear(x, y, radius) : 0;
+    }
+
+    /**
+     * Número de pontos dentro do retângulo dado (limites incluídos).
+     */
+    public int countInBox(double left, double bottom, double right, double top) {
+        return root.intersects(left, bottom, right, top) ? root.countInBox(left, bottom, right, top) : 0;
+    }
+
+    /**
+     * Devolve os pontos dentro do retângulo dado (limites incluídos).
+     */
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        List<T> result = new ArrayList<>();
+        if (root.intersects(left, bottom, right, top))
+            root.collectInBox(left, bottom, right, top, result);
+        return result;
+    }
+
+    /**
+     * Devolve os pontos dentro do polígono dado.
+     */
+    public List<T> findInPolygon(Polygon polygon) {
+        List<T> result = new ArrayList<>();
+        if (root.intersects(polygon))
+            root.collectInPolygon(polygon, result);
+        return result;
+    }
+
+    /**
+     * Responde a várias pesquisas por raio numa só travessia da árvore:
+     * cada nível só é percorrido uma vez, levando consigo os centros cujo
+     * círculo ainda interseta cada quadrante. O conjunto de índice i tem
+     * os pontos próximos de (xs[i],ys[i]).
+     */
+    public List<Set<T>> findNearBatch(double[] xs, double[] ys, double radius) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException("Coordinate arrays of different length");
+
+        List<Set<T>> results = new ArrayList<>(xs.length);
+        int[] active = new int[xs.length];
+        int activeCount = 0;
+
+        for (int c = 0; c < xs.length; c++) {
+            results.add(new HashSet<>());
+            if (root.overlaps(xs[c], ys[c], radius)) active[activeCount++] = c;
+        }
+        if (activeCount > 0)
+            root.collectNearBatch(xs, ys, radius, active, activeCount, results);
+        return results;
+    }
+
+    /**
+     * Aplica a ação a cada ponto próximo de (x,y), sem criar coleções
+     * de resultados.
+     */
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        forEachNearWhile(x, y, radius, point -> {
+            action.accept(point);
+            return true;
+        });
+    }
+
+    /**
+     * Como forEachNear, mas a pesquisa termina logo que a ação devolva false.
+     * Devolve false se a pesquisa foi interrompida.
+     */
+    public boolean forEachNearWhile(double x, double y, double radius, Predicate<? super T> action) {
+        return !root.overlaps(x, y, radius) || root.forEachNear(x, y, radius, action);
+    }
+
+    /**
+     * Devolve os k pontos mais próximos de (x,y), ordenados por distância
+     * crescente. Devolve menos de k pontos se a quadtree não os tiver.
+     */
+    public List<T> findNearest(double x, double y, int k) {
+        return new NearestSearch<T>(x, y, k).search(root);
+    }
+
+    /**
+     * Devolve os k pontos com maior valor do atributo dado na criação da
+     * quadtree a uma distância de (x,y) não superior ao
+     * raio, por ordem decrescente desse valor. Só visita as subárvores cujo
+     * máximo ainda supera o do k-ésimo melhor ponto encontrado.
+     */
+    public List<T> findTopNear(double x, double y, double radius, int k) {
+        return findTopNear(x, y, radius, k, point -> true);
+    }
+
+    /**
+     * Como findTopNear, considerando apenas os pontos aceites pelo filtro.
+     */
+    public List<T> findTopNear(double x, double y, double radius, int k, Predicate<? super T> filter) {
+        if (root.score == null)
+            throw new IllegalStateException("Quadtree without score");
+
+        return new TopSearch<T>(x, y, radius, k, filter, root.score).search(root);
+    }
+
+    /**
+     * Abre um cursor sobre os pontos do retângulo dado, para os obter por
+     * páginas sem construir o resultado completo.
+     */
+    public Cursor<T> openCursor(double left, double bottom, double right, double top) {
+        return Cursor.box(root, left, bottom, right, top);
+    }
+
+    /**
+     * Abre um cursor sobre os pontos a uma distância de (x,y) não superior
+     * ao raio.
+     */
+    public Cursor<T> openCursor(double x, double y, double radius) {
+        return Cursor.circle(root, x, y, radius);
+    }
+
+    /**
+     * Retoma um cursor a partir do token devolvido por Cursor.getToken.
+     * As páginas só são estáveis se a quadtree não tiver sido alterada.
+     */
+    public Cursor<T> resumeCursor(String token) {
+        return Cursor.resume(root, token);
+    }
+
     public boolean inside(HasPoint point) {
-        return point.x() >= minX && point.x() <= maxX &&
-                point.y() >= minY && point.y() <= maxY;
+        return inside(point.x(), point.y());
+    }
+
+    private boolean inside(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    private void ensureInside(HasPoint point) {
+        if (inside(point)) return;
+
+        if (!growable || !Double.isFinite(point.x()) || !Double.isFinite(point.y()) ||
+                !(maxX > minX) || !(maxY > minY))
+            throw new PointOutOfBoundException(point);
+
+        while (!inside(point)) grow(point.x(), point.y());
     }
 
+    /**
+     * Duplica os limites na direção de (x,y). A raiz atual fica como um dos
+     * quadrantes da nova raiz, com a fronteira entre eles exatamente nos
+     * limites antigos.
+     */
+    private void grow(double x, double y) {
+        double width = maxX - minX;
+        double height = maxY - minY;
+        boolean west = x < (minX + maxX) / 2;
+        boolean south = y < (minY + maxY) / 2;
+
+        double midX = west ? minX : maxX;
+        double midY = south ? minY : maxY;
+        if (west) minX -= width; else maxX += width;
+        if (south) minY -= height; else maxY += height;
+
+        root = new NodeTrie<>(minX, minY, maxX, maxY, midX, midY, root.depth - 1, root);
+    }
+
+    @Override
     public List<T> getAll() {
         List<T> result = new ArrayList<>();
         root.collect(result);
@@ -96,10 +463,24 @@ public class PointQuadtree<T extends HasPoint> implements Iterable<T>, Serializa
 
     @Override
     public Iterator<T> iterator() {
-        return getAll().iterator();
+        return Spliterators.iterator(spliterator());
     }
 
+    @Override
+    public Spliterator<T> spliterator() {
+        return new TrieSpliterator<>(root);
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    @Override
     public int size() {
-        return getAll().size();
+        return root.size();
     }
 }
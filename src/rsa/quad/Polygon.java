@@ -0,0 +1,96 @@
+package rsa.quad;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Polígono simples (convexo ou côncavo) usado em pesquisas por região,
+ * como as áreas de serviço. Os vértices são dados por ordem, sem repetir
+ * o primeiro no fim.
+ */
+public class Polygon implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] xs, ys;
+    private final double minX, minY, maxX, maxY;
+
+    public Polygon(double[] xs, double[] ys) {
+        if (xs.length != ys.length || xs.length < 3)
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices");
+
+        this.xs = Arrays.copyOf(xs, xs.length);
+        this.ys = Arrays.copyOf(ys, ys.length);
+        this.minX = Arrays.stream(xs).min().getAsDouble();
+        this.minY = Arrays.stream(ys).min().getAsDouble();
+        this.maxX = Arrays.stream(xs).max().getAsDouble();
+        this.maxY = Arrays.stream(ys).max().getAsDouble();
+    }
+
+    /**
+     * Verifica se o ponto está dentro do polígono (regra par-ímpar).
+     */
+    public boolean contains(double x, double y) {
+        if (x < minX || x > maxX || y < minY || y > maxY) return false;
+
+        boolean inside = false;
+        for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+            if ((ys[i] > y) != (ys[j] > y) &&
+                    x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i])
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    /**
+     * Verifica se o retângulo está inteiramente dentro do polígono:
+     * os cantos estão dentro e nenhuma aresta o atravessa.
+     */
+    boolean containsBox(double left, double bottom, double right, double top) {
+        return contains(left, bottom) && contains(right, bottom) &&
+                contains(left, top) && contains(right, top) &&
+                !edgeCrosses(left, bottom, right, top);
+    }
+
+    /**
+     * Verifica se o retângulo e o polígono não têm pontos em comum.
+     */
+    boolean disjointFromBox(double left, double bottom, double right, double top) {
+        if (right < minX || left > maxX || top < minY || bottom > maxY) return true;
+
+        return !edgeCrosses(left, bottom, right, top) &&
+                !contains(left, bottom) &&
+                !(xs[0] >= left && xs[0] <= right && ys[0] >= bottom && ys[0] <= top);
+    }
+
+    private boolean edgeCrosses(double left, double bottom, double right, double top) {
+        for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+            if (segmentCrossesBox(xs[j], ys[j], xs[i], ys[i], left, bottom, right, top))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recorte de Liang-Barsky: o segmento interseta o retângulo se sobrar
+     * algum troço depois de o recortar pelos quatro lados.
+     */
+    private static boolean segmentCrossesBox(double x1, double y1, double x2, double y2,
+                                             double left, double bottom, double right, double top) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {x1 - left, right - x1, y1 - bottom, top - y1};
+        double t0 = 0, t1 = 1;
+
+        for (int k = 0; k < 4; k++) {
+            if (p[k] == 0) {
+                if (q[k] < 0) return false;
+            } else {
+                double t = q[k] / p[k];
+                if (p[k] < 0) t0 = Math.max(t0, t);
+                else t1 = Math.min(t1, t);
+                if (t0 > t1) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,13 @@
+package rsa.quad;
+
+import java.io.Serializable;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Atributo dos pontos cujo máximo é mantido em cada nó de uma quadtree,
+ * para as pesquisas dos melhores pontos numa região (findTopNear). É
+ * serializável para que a quadtree que o usa também o seja.
+ */
+@FunctionalInterface
+public interface Score<T> extends ToDoubleFunction<T>, Serializable {
+}
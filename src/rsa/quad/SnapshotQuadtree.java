@@ -0,0 +1,89 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial para muitas leituras concorrentes e poucas escritas.
+ * A versão atual é uma PersistentQuadtree publicada numa referência
+ * atómica: as escritas (uma de cada vez) produzem uma nova versão e
+ * publicam-na, as leituras usam a versão publicada nesse momento, sem
+ * locks e sem verem alterações a meio.
+ *
+ * Para fazer várias pesquisas sobre o mesmo estado, obtém-se a versão
+ * com snapshot() e pesquisa-se diretamente nela.
+ */
+public class SnapshotQuadtree<T extends HasPoint> implements SpatialIndex<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicReference<PersistentQuadtree<T>> current;
+
+    public SnapshotQuadtree(double minX, double minY, double maxX, double maxY) {
+        this(new PersistentQuadtree<>(minX, minY, maxX, maxY));
+    }
+
+    public SnapshotQuadtree(PersistentQuadtree<T> initial) {
+        current = new AtomicReference<>(initial);
+    }
+
+    /**
+     * Versão imutável publicada mais recentemente.
+     */
+    public PersistentQuadtree<T> snapshot() {
+        return current.get();
+    }
+
+    @Override
+    public synchronized void insert(T point) {
+        current.set(current.get().insert(point));
+    }
+
+    @Override
+    public synchronized boolean remove(T point) {
+        PersistentQuadtree<T> previous = current.get();
+        PersistentQuadtree<T> next = previous.remove(point);
+        current.set(next);
+        return next != previous;
+    }
+
+    @Override
+    public synchronized void move(T point, double oldX, double oldY) {
+        current.set(current.get().move(point, oldX, oldY));
+    }
+
+    @Override
+    public Set<T> findNear(double x, double y, double radius) {
+        return snapshot().findNear(x, y, radius);
+    }
+
+    @Override
+    public void forEachNear(double x, double y, double radius, Consumer<? super T> action) {
+        snapshot().forEachNear(x, y, radius, action);
+    }
+
+    @Override
+    public List<T> findInBox(double left, double bottom, double right, double top) {
+        return snapshot().findInBox(left, bottom, right, top);
+    }
+
+    @Override
+    public List<T> getAll() {
+        return snapshot().getAll();
+    }
+
+    @Override
+    public int size() {
+        return snapshot().size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot().iterator();
+    }
+}
@@ -0,0 +1,40 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial de objetos com um ponto (x,y). Permite escolher entre
+ * implementações (PointQuadtree, MortonIndex, ...) consoante a densidade e
+ * a proporção entre leituras e escritas.
+ */
+public interface SpatialIndex<T extends HasPoint> extends Iterable<T> {
+
+    void insert(T point);
+
+    /**
+     * Remove este objeto (por identidade), procurado nas suas coordenadas
+     * atuais; outros objetos nas mesmas coordenadas ficam no índice.
+     * Devolve false se o objeto não estava no índice.
+     */
+    boolean remove(T point);
+
+    /**
+     * Reposiciona um ponto indexado em (oldX,oldY) cujas coordenadas mudaram.
+     * Um ponto que não estava indexado em (oldX,oldY) é inserido.
+     */
+    void move(T point, double oldX, double oldY);
+
+    Set<T> findNear(double x, double y, double radius);
+
+    void forEachNear(double x, double y, double radius, Consumer<? super T> action);
+
+    List<T> findInBox(double left, double bottom, double right, double top);
+
+    List<T> getAll();
+
+    int size();
+}
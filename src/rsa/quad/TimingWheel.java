@@ -0,0 +1,171 @@
+package rsa.quad;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Roda temporal hierárquica: agenda a expiração de objetos e devolve-os
+ * em bloco quando o tempo avança, sem percorrer os que ainda não
+ * expiraram. O tempo é medido em ticks (de tickMillis milissegundos).
+ * O nível 0 tem uma posição por tick do bloco atual de SLOTS ticks; cada
+ * nível seguinte tem uma posição por bloco do nível anterior. Quando o
+ * tempo entra num novo bloco, a posição correspondente do nível de cima
+ * é redistribuída pelos níveis de baixo. Prazos para lá do último nível
+ * ficam à parte e são redistribuídos quando este dá a volta.
+ *
+ * Os objetos são comparados por identidade. Um objeto expira no primeiro
+ * avanço que ultrapasse o tick do seu prazo, arredondado por excesso.
+ */
+public class TimingWheel<E> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final List<List<Set<E>>> levels = new ArrayList<>();
+    private final Set<E> overflow = newSet();
+    private final Map<E, Timer<E>> timers = new IdentityHashMap<>();
+    private long currentTick;
+
+    private static class Timer<E> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long tick;
+        final Set<E> slot;
+
+        Timer(long tick, Set<E> slot) {
+            this.tick = tick;
+            this.slot = slot;
+        }
+    }
+
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Tick must be positive");
+
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+
+        for (int level = 0; level < LEVELS; level++) {
+            List<Set<E>> slots = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) slots.add(newSet());
+            levels.add(slots);
+        }
+    }
+
+    private static <E> Set<E> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Agenda (ou reagenda) a expiração do objeto para o instante dado.
+     */
+    public void schedule(E element, long deadlineMillis) {
+        cancel(element);
+        long tick = Math.max(currentTick, -Math.floorDiv(-deadlineMillis, tickMillis));
+        place(element, tick);
+    }
+
+    /**
+     * Cancela a expiração agendada do objeto, se houver.
+     */
+    public boolean cancel(E element) {
+        Timer<E> timer = timers.remove(element);
+        if (timer == null) return false;
+
+        timer.slot.remove(element);
+        return true;
+    }
+
+    /**
+     * Avança o tempo até ao instante dado e devolve os objetos que
+     * expiraram entretanto, deixando de os acompanhar.
+     */
+    public List<E> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        List<E> expired = new ArrayList<>();
+
+        while (currentTick <= target) {
+            if (timers.isEmpty()) {
+                currentTick = target + 1;
+                break;
+            }
+
+            cascade();
+            Set<E> slot = levels.get(0).get((int) (currentTick & (SLOTS - 1)));
+            if (!slot.isEmpty()) {
+                for (E element : new ArrayList<>(slot)) {
+                    Timer<E> timer = timers.get(element);
+                    slot.remove(element);
+                    if (timer.tick <= currentTick) {
+                        timers.remove(element);
+                        expired.add(element);
+                    } else {
+                        place(element, timer.tick);
+                    }
+                }
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    /**
+     * No início de um bloco de um nível, redistribui a posição desse bloco
+     * no nível de cima (começando pelos níveis mais altos).
+     */
+    private void cascade() {
+        if ((currentTick & (span(LEVELS) - 1)) == 0) replace(overflow);
+
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((currentTick & (span(level) - 1)) == 0)
+                replace(levels.get(level).get(slotIndex(currentTick, level)));
+        }
+    }
+
+    private void replace(Set<E> slot) {
+        if (slot.isEmpty()) return;
+
+        List<E> elements = new ArrayList<>(slot);
+        slot.clear();
+        for (E element : elements) place(element, timers.get(element).tick);
+    }
+
+    /**
+     * Coloca o objeto no nível mais baixo cujo bloco (do nível de cima)
+     * contém tanto o tick atual como o do prazo.
+     */
+    private void place(E element, long tick) {
+        Set<E> slot = overflow;
+        for (int level = 0; level < LEVELS; level++) {
+            if (tick >> (SLOT_BITS * (level + 1)) == currentTick >> (SLOT_BITS * (level + 1))) {
+                slot = levels.get(level).get(slotIndex(tick, level));
+                break;
+            }
+        }
+        slot.add(element);
+        timers.put(element, new Timer<>(tick, slot));
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    private static long span(int level) {
+        return 1L << (SLOT_BITS * level);
+    }
+}
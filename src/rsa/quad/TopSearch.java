@@ -0,0 +1,117 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Pesquisa dos k pontos com maior valor do atributo da quadtree a
+ * uma distância de (x,y) não superior ao raio, feita "best-first": as
+ * tries por visitar ficam numa fila ordenada pelo máximo do atributo na
+ * sua subárvore e são descartadas quando esse máximo já não supera o do
+ * k-ésimo melhor ponto encontrado.
+ */
+class TopSearch<T extends HasPoint> {
+
+    private final double x, y, radius;
+    private final int k;
+    private final Predicate<? super T> filter;
+    private final ToDoubleFunction<? super T> score;
+    private final PriorityQueue<Pending<T>> frontier = new PriorityQueue<>(Collections.reverseOrder());
+    private final PriorityQueue<Candidate<T>> best = new PriorityQueue<>();
+
+    TopSearch(double x, double y, double radius, int k,
+              Predicate<? super T> filter, ToDoubleFunction<? super T> score) {
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+        this.k = k;
+        this.filter = filter;
+        this.score = score;
+    }
+
+    /**
+     * Valor do k-ésimo melhor ponto, ou menos infinito enquanto ainda não
+     * houver k candidatos.
+     */
+    double bound() {
+        return best.size() < k ? Double.NEGATIVE_INFINITY : best.peek().score;
+    }
+
+    /**
+     * Acrescenta uma trie à fronteira, se a sua célula intersetar o círculo
+     * e ainda puder conter algum ponto melhor do que os já encontrados.
+     */
+    void push(Trie<T> trie) {
+        if (trie.size() == 0 || !trie.overlaps(x, y, radius)) return;
+
+        double max = trie.maxScore();
+        if (best.size() < k || max > bound())
+            frontier.add(new Pending<>(trie, max));
+    }
+
+    void offer(T point, double px, double py) {
+        double dx = px - x, dy = py - y;
+        if (dx * dx + dy * dy > radius * radius || !filter.test(point)) return;
+
+        double value = score.applyAsDouble(point);
+        if (best.size() < k) {
+            best.add(new Candidate<>(point, value));
+        } else if (value > best.peek().score) {
+            best.poll();
+            best.add(new Candidate<>(point, value));
+        }
+    }
+
+    List<T> search(Trie<T> root) {
+        if (k <= 0) return new ArrayList<>();
+
+        push(root);
+        while (!frontier.isEmpty()) {
+            Pending<T> next = frontier.poll();
+            if (best.size() >= k && next.score <= bound()) break;
+            next.trie.collectTop(this);
+        }
+
+        List<Candidate<T>> sorted = new ArrayList<>(best);
+        sorted.sort(Collections.reverseOrder());
+        List<T> result = new ArrayList<>(sorted.size());
+        for (Candidate<T> candidate : sorted) result.add(candidate.point);
+        return result;
+    }
+
+    private static class Pending<T extends HasPoint> implements Comparable<Pending<T>> {
+        final Trie<T> trie;
+        final double score;
+
+        Pending(Trie<T> trie, double score) {
+            this.trie = trie;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Pending<T> other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
+    private static class Candidate<T extends HasPoint> implements Comparable<Candidate<T>> {
+        final T point;
+        final double score;
+
+        Candidate(T point, double score) {
+            this.point = point;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate<T> other) {
+            return Double.compare(score, other.score);
+        }
+    }
+}
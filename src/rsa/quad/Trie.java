@@ -6,20 +6,37 @@ import rsa.shared.HasPoint;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public abstract class Trie<T extends HasPoint> implements Element<T>, Serializable {
     private static final long serialVersionUID = 1L;
 
     protected double minX, minY, maxX, maxY;
+    protected int depth;
+    protected final Configuration configuration;
+    protected final Score<? super T> score;
     private static int capacity = 4;
 
     public Trie(double minX, double minY, double maxX, double maxY) {
+        this(minX, minY, maxX, maxY, new Configuration(), null, 0);
+    }
+
+    Trie(double minX, double minY, double maxX, double maxY,
+         Configuration configuration, Score<? super T> score, int depth) {
         this.minX = minX;
         this.minY = minY;
         this.maxX = maxX;
         this.maxY = maxY;
+        this.configuration = configuration;
+        this.score = score;
+        this.depth = depth;
     }
 
+    /*
+     * A capacidade estática é apenas o valor por omissão das novas
+     * configurações; cada quadtree usa a sua própria Configuration.
+     */
+
     public static int getCapacity() {
         return capacity;
     }
@@ -28,6 +45,17 @@ public abstract class Trie<T extends HasPoint> implements Element<T>, Serializab
         Trie.capacity = capacity;
     }
 
+    boolean canSplit() {
+        return configuration.canSplit(minX, minY, maxX, maxY, depth);
+    }
+
+    /**
+     * Cópia da configuração partilhada pelas tries desta árvore.
+     */
+    public Configuration getConfiguration() {
+        return new Configuration(configuration);
+    }
+
     public boolean overlaps(Location center, double radius) {
         double closestX = Math.max(minX, Math.min(center.x(), maxX));
         double closestY = Math.max(minY, Math.min(center.y(), maxY));
@@ -50,17 +78,134 @@ public abstract class Trie<T extends HasPoint> implements Element<T>, Serializab
         return dx * dx + dy * dy <= radius * radius;
     }
 
-    public abstract Trie<T> insert(T point);
+    /**
+     * Verifica se esta célula está inteiramente dentro do círculo, isto é,
+     * se o canto mais afastado de (x,y) está a uma distância não superior
+     * ao raio. Nesse caso todos os pontos da célula estão no círculo.
+     */
+    public boolean insideCircle(double x, double y, double radius) {
+        double dx = Math.max(Math.abs(x - minX), Math.abs(x - maxX));
+        double dy = Math.max(Math.abs(y - minY), Math.abs(y - maxY));
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    /**
+     * Verifica se esta célula interseta o retângulo dado.
+     */
+    public boolean intersects(double left, double bottom, double right, double top) {
+        return minX <= right && maxX >= left && minY <= top && maxY >= bottom;
+    }
+
+    /**
+     * Verifica se esta célula está inteiramente dentro do retângulo dado.
+     */
+    public boolean insideBox(double left, double bottom, double right, double top) {
+        return minX >= left && maxX <= right && minY >= bottom && maxY <= top;
+    }
+
+    public boolean intersects(Polygon polygon) {
+        return !polygon.disjointFromBox(minX, minY, maxX, maxY);
+    }
+
+    public boolean insidePolygon(Polygon polygon) {
+        return polygon.containsBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Verifica se (x,y) está nesta célula (incluindo a fronteira).
+     */
+    boolean contains(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Quadrado da distância mínima de (x,y) a esta célula (0 se estiver dentro).
+     */
+    double minDistanceSquared(double x, double y) {
+        double dx = Math.max(Math.max(minX - x, x - maxX), 0);
+        double dy = Math.max(Math.max(minY - y, y - maxY), 0);
+        return dx * dx + dy * dy;
+    }
+
+    public Trie<T> insert(T point) {
+        return insert(point, point.x(), point.y());
+    }
+
+    /**
+     * Insere o ponto nas coordenadas dadas, que podem já não ser as atuais
+     * (um ponto que é redistribuído fica nas coordenadas em que foi indexado).
+     */
+    abstract Trie<T> insert(T point, double x, double y);
     public abstract Trie<T> insertReplace(T point);
     public abstract boolean remove(T point);
     public abstract void delete(T point);
     public abstract T find(T point);
+
+    /**
+     * Número de pontos guardados nesta trie, em tempo constante.
+     */
+    public abstract int size();
     public abstract void collect(List<T> points);
+
+    /**
+     * Recolhe os pontos com as coordenadas em que estão indexados.
+     */
+    abstract void collect(Batch<T> batch);
     public abstract void collectNear(Location center, double radius, List<T> points);
     public abstract void collectNear(double x, double y, double radius, Set<T> points);
     public abstract void collectAll(Set<T> points);
+    public abstract void collectInBox(double left, double bottom, double right, double top, List<T> points);
+    public abstract void collectInPolygon(Polygon polygon, List<T> points);
+
+    /**
+     * Contam os pontos no círculo ou no retângulo sem os recolher, usando
+     * a contagem das subárvores inteiramente contidas na região.
+     */
+    public abstract int countNear(double x, double y, double radius);
+    public abstract int countInBox(double left, double bottom, double right, double top);
+
+    /**
+     * Aplica a ação aos pontos a uma distância de (x,y) não superior ao
+     * raio, sem criar coleções. A ação devolve false para terminar a
+     * pesquisa; nesse caso este método também devolve false.
+     */
+    public abstract boolean forEachNear(double x, double y, double radius, Predicate<? super T> action);
     public abstract void accept(Visitor<T> visitor);
 
+    /**
+     * Reposiciona um ponto cujas coordenadas mudaram de (oldX,oldY) para
+     * as atuais. Devolve a trie que substitui esta, ou null (sem alterar
+     * nada) se o ponto não estava indexado em (oldX,oldY).
+     */
+    public abstract Trie<T> move(T point, double oldX, double oldY);
+
+    /**
+     * Remove este objeto (por identidade), indexado em (x,y).
+     */
+    abstract boolean removeElement(T point, double x, double y);
+
+    /**
+     * Devolve a trie que deve substituir esta depois de remoções, juntando
+     * numa só folha as subárvores que ficaram com poucos pontos.
+     */
+    abstract Trie<T> compact();
+    abstract void collectNearest(NearestSearch<T> search);
+
+    /**
+     * Maior valor do atributo (score) entre os pontos desta trie, ou menos
+     * infinito se estiver vazia ou a árvore não tiver atributo.
+     */
+    abstract double maxScore();
+    abstract void collectTop(TopSearch<T> search);
+
+    /**
+     * Pesquisa por raio para vários centros numa só travessia. Só os
+     * centros active[0..activeCount[ cujo círculo interseta esta célula
+     * chegam aqui; os pontos do centro c são acrescentados a results.get(c).
+     */
+    abstract void collectNearBatch(double[] xs, double[] ys, double radius,
+                                   int[] active, int activeCount, List<Set<T>> results);
+
     public enum Quadrant {
         NW, NE, SW, SE
     }
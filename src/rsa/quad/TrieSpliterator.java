@@ -0,0 +1,82 @@
+package rsa.quad;
+
+import rsa.shared.HasPoint;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Percorre uma trie de forma preguiçosa, com uma pilha das subárvores
+ * ainda por visitar, sem copiar os pontos para uma lista. Divide-se pelas
+ * fronteiras dos quadrantes dos NodeTrie para permitir streams paralelas.
+ * A trie não deve ser alterada durante o percurso.
+ */
+class TrieSpliterator<T extends HasPoint> implements Spliterator<T>, Visitor<T> {
+
+    private final Deque<Trie<T>> pending = new ArrayDeque<>();
+    private LeafTrie<T> leaf;
+    private int index;
+
+    TrieSpliterator(Trie<T> root) {
+        pending.push(root);
+    }
+
+    private TrieSpliterator() {
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!hasLeafRemaining()) {
+            if (pending.isEmpty()) return false;
+            pending.pop().accept(this);
+        }
+        action.accept(leaf.get(index++));
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (!hasLeafRemaining()) {
+            while (pending.size() == 1) pending.pop().accept(this);
+        }
+
+        int half = hasLeafRemaining() ? (pending.size() + 1) / 2 : pending.size() / 2;
+        if (half == 0) return null;
+
+        TrieSpliterator<T> prefix = new TrieSpliterator<>();
+        for (int i = 0; i < half; i++) prefix.pending.push(pending.removeLast());
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = hasLeafRemaining() ? leaf.size() - index : 0;
+        for (Trie<T> trie : pending) size += trie.size();
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return SIZED | SUBSIZED | NONNULL;
+    }
+
+    @Override
+    public void visit(LeafTrie<T> leaf) {
+        this.leaf = leaf;
+        this.index = 0;
+    }
+
+    @Override
+    public void visit(NodeTrie<T> node) {
+        pending.push(node.getQuadrant(Trie.Quadrant.SE));
+        pending.push(node.getQuadrant(Trie.Quadrant.SW));
+        pending.push(node.getQuadrant(Trie.Quadrant.NE));
+        pending.push(node.getQuadrant(Trie.Quadrant.NW));
+    }
+
+    private boolean hasLeafRemaining() {
+        return leaf != null && index < leaf.size();
+    }
+}
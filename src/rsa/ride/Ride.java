@@ -7,6 +7,7 @@ import rsa.user.User;
 import rsa.match.PreferredMatch;
 import rsa.shared.HasPoint;
 
+import java.io.Serializable;
 import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -14,7 +15,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * Representa uma boleia (como condutor ou passageiro).
  * Implementa HasPoint para suportar geolocalização via QuadTrees.
  */
-public class Ride implements HasPoint, RideMatchSorter {
+public class Ride implements HasPoint, RideMatchSorter, Serializable {
+    private static final long serialVersionUID = 1L;
     private static final AtomicLong idGenerator = new AtomicLong(0);
 
     private long id;
@@ -12,6 +12,11 @@ import rsa.user.*;
 
 import rsa.match.Matcher;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.SortedSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -23,6 +28,8 @@ import static rsa.user.UsersTest.USERS_FILE;
  * 
  */
 public class MatcherTest extends TestData {
+	private static final long TIME_TO_LIVE = 50;
+
 	static Users allUsers;
 
 	Matcher matcher;
@@ -502,4 +509,95 @@ public class MatcherTest extends TestData {
 		
 		assertEquals(PLATES[2],passengerMatch.getCar().getPlate());
 	}
+
+	/**
+	 * A ride that moves matches at its new position and no longer
+	 * at the old one.
+	 * @throws RideSharingAppException on deserialization error.
+	 */
+	@Test
+	public void testUpdateRideMoves() throws RideSharingAppException {
+		long driverRideId    = matcher.addRide(getUser(0,0), from, to, PLATES[0],COSTS[0]);
+		long passengerRideId = matcher.addRide(getUser(1), other, to, null,COSTS[0]);
+
+		assertEquals(0,matcher.updateRide(passengerRideId, other).size());
+		assertEquals(1,matcher.updateRide(driverRideId, other).size());
+
+		long lateRideId = matcher.addRide(getUser(2), from, to, null,COSTS[0]);
+
+		assertEquals(0,matcher.updateRide(lateRideId, from).size());
+	}
+
+	/**
+	 * A matcher backed by a uniform grid matches and moves rides
+	 * as the default one.
+	 * @throws RideSharingAppException on deserialization error.
+	 */
+	@Test
+	public void testWithGrid() throws RideSharingAppException {
+		Matcher gridMatcher = Matcher.withGrid();
+		Location near = new Location(X1+RADIUS,Y1);
+
+		long driverRideId    = gridMatcher.addRide(getUser(0,0), from, to, PLATES[0],COSTS[0]);
+		long passengerRideId = gridMatcher.addRide(getUser(1), near, to, null,COSTS[0]);
+
+		assertEquals(1,gridMatcher.updateRide(passengerRideId, near).size());
+		assertEquals(0,gridMatcher.updateRide(driverRideId, other).size());
+		assertEquals(0,gridMatcher.updateRide(passengerRideId, near).size());
+	}
+
+	/**
+	 * A ride that is not updated within its time to live is forgotten:
+	 * it no longer matches and can no longer be updated.
+	 * @throws Exception on deserialization error or interruption.
+	 */
+	@Test
+	public void testRideExpiry() throws Exception {
+		Matcher.setRideTimeToLive(TIME_TO_LIVE);
+		try {
+			Matcher expiring = new Matcher();
+			long driverRideId = expiring.addRide(getUser(0,0), from, to, PLATES[0],COSTS[0]);
+
+			Thread.sleep(2*TIME_TO_LIVE);
+			long passengerRideId = expiring.addRide(getUser(1), from, to, null,COSTS[0]);
+
+			assertEquals(0,expiring.updateRide(passengerRideId, from).size());
+			assertEquals(0,expiring.updateRide(driverRideId, from).size());
+		} finally {
+			Matcher.setRideTimeToLive(0);
+		}
+	}
+
+	/**
+	 * A matcher read back from its serialized form still forgets the
+	 * rides that expire.
+	 * @throws Exception on deserialization error or interruption.
+	 */
+	@Test
+	public void testRideExpiryAfterDeserialization() throws Exception {
+		Matcher.setRideTimeToLive(TIME_TO_LIVE);
+		try {
+			Matcher expiring = new Matcher();
+			long driverRideId = expiring.addRide(getUser(0,0), from, to, PLATES[0],COSTS[0]);
+			Matcher copy = copy(expiring);
+
+			Thread.sleep(2*TIME_TO_LIVE);
+			long passengerRideId = copy.addRide(getUser(1), from, to, null,COSTS[0]);
+
+			assertEquals(0,copy.updateRide(passengerRideId, from).size());
+			assertEquals(0,copy.updateRide(driverRideId, from).size());
+		} finally {
+			Matcher.setRideTimeToLive(0);
+		}
+	}
+
+	private static Matcher copy(Matcher matcher) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(matcher);
+		}
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (Matcher) in.readObject();
+		}
+	}
 }
@@ -0,0 +1,172 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import rsa.match.Location;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on a ConcurrentPointQuadtree, the striped quadtree
+ * shared by several threads.
+ */
+public class ConcurrentPointQuadtreeTest {
+
+	private static final int SIDE = 100;
+	private static final int THREADS = 4;
+	private static final int POINTS_PER_THREAD = 2000;
+	private static final int MOVING_PER_THREAD = 500;
+	private static final int MOVES = 20;
+
+	ConcurrentPointQuadtree<Location> tree;
+
+	@BeforeEach
+	public void setUp() {
+		tree = new ConcurrentPointQuadtree<>(0, 0, SIDE, SIDE, 4);
+	}
+
+	/**
+	 * Queries spanning several stripes, including points on the
+	 * borders between stripes, match a brute force search
+	 */
+	@Test
+	public void testFindNear() {
+		List<Location> all = new ArrayList<>();
+		for(int x=0; x <= SIDE; x += 5)
+			for(int y=0; y <= SIDE; y += 5) {
+				Location location = new Location(x, y);
+				all.add(location);
+				tree.insert(location);
+			}
+
+		Set<Location> expected = new HashSet<>();
+		for(Location location: all)
+			if(Trie.getDistance(50, 50, location.x(), location.y()) <= 30)
+				expected.add(location);
+
+		assertAll(
+				() -> assertEquals(all.size(), tree.size()),
+				() -> assertEquals(expected, tree.findNear(50, 50, 30)),
+				() -> assertEquals(new HashSet<>(all), new HashSet<>(tree.getAll())),
+				() -> assertThrows(PointOutOfBoundException.class,
+						() -> tree.insert(new Location(2*SIDE, 0))));
+	}
+
+	/**
+	 * Moving between stripes keeps the point in exactly one of them
+	 */
+	@Test
+	public void testMoveAcrossStripes() {
+		rsa.quad.Location moving = new rsa.quad.Location("moving", 10, 10);
+		ConcurrentPointQuadtree<rsa.quad.Location> moves = new ConcurrentPointQuadtree<>(0, 0, SIDE, SIDE, 4);
+		moves.insert(moving);
+
+		moving.longitude = 90;
+		moves.move(moving, 10, 10);
+
+		assertAll(
+				() -> assertEquals(1, moves.size()),
+				() -> assertTrue(moves.findNear(10, 10, 1).isEmpty()),
+				() -> assertTrue(moves.findNear(90, 10, 0).contains(moving)),
+				() -> assertTrue(moves.remove(moving)),
+				() -> assertEquals(0, moves.size()));
+	}
+
+	/**
+	 * Concurrent inserts, removals and queries leave the index consistent
+	 */
+	@Test
+	public void testConcurrentUpdates() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2*THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for(int t=0; t < THREADS; t++) {
+			Random random = new Random(t);
+			futures.add(executor.submit(() -> {
+				List<Location> inserted = new ArrayList<>();
+				for(int i=0; i < POINTS_PER_THREAD; i++) {
+					Location location = new Location(SIDE*random.nextDouble(), SIDE*random.nextDouble());
+					tree.insert(location);
+					inserted.add(location);
+				}
+				for(int i=0; i < POINTS_PER_THREAD; i += 2)
+					assertTrue(tree.remove(inserted.get(i)));
+			}));
+			futures.add(executor.submit(() -> {
+				for(int i=0; i < POINTS_PER_THREAD; i++)
+					tree.findNear(SIDE*random.nextDouble(), SIDE*random.nextDouble(), 10);
+			}));
+		}
+
+		for(Future<?> future: futures)
+			future.get();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		assertAll(
+				() -> assertEquals(THREADS*POINTS_PER_THREAD/2, tree.size()),
+				() -> assertEquals(THREADS*POINTS_PER_THREAD/2, tree.findInBox(0, 0, SIDE, SIDE).size()));
+	}
+
+	/**
+	 * Writers moving their own points concurrently, within and across
+	 * stripes, leave every point exactly once at its last position
+	 */
+	@Test
+	public void testConcurrentMoves() throws Exception {
+		ConcurrentPointQuadtree<rsa.quad.Location> moves = new ConcurrentPointQuadtree<>(0, 0, SIDE, SIDE, 4);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<List<rsa.quad.Location>>> futures = new ArrayList<>();
+
+		for(int t=0; t < THREADS; t++) {
+			Random random = new Random(t);
+			String prefix = "t"+t+"-";
+			futures.add(executor.submit(() -> {
+				List<rsa.quad.Location> owned = new ArrayList<>();
+				for(int i=0; i < MOVING_PER_THREAD; i++) {
+					rsa.quad.Location location = new rsa.quad.Location(prefix+i,
+							SIDE*random.nextDouble(), SIDE*random.nextDouble());
+					moves.insert(location);
+					owned.add(location);
+				}
+				for(int m=0; m < MOVES; m++)
+					for(rsa.quad.Location location: owned) {
+						double oldX = location.x(), oldY = location.y();
+						location.longitude = SIDE*random.nextDouble();
+						location.latitude = SIDE*random.nextDouble();
+						moves.move(location, oldX, oldY);
+					}
+				return owned;
+			}));
+		}
+
+		List<rsa.quad.Location> all = new ArrayList<>();
+		for(Future<List<rsa.quad.Location>> future: futures)
+			all.addAll(future.get());
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		Set<rsa.quad.Location> found = Collections.newSetFromMap(new IdentityHashMap<>());
+		found.addAll(moves.getAll());
+
+		assertAll(
+				() -> assertEquals(THREADS*MOVING_PER_THREAD, moves.size()),
+				() -> assertEquals(THREADS*MOVING_PER_THREAD, found.size()),
+				() -> assertTrue(found.containsAll(all)),
+				() -> assertTrue(all.stream().allMatch(
+						l -> moves.findNear(l.x(), l.y(), 0).contains(l))));
+	}
+}
@@ -0,0 +1,168 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on an ExpiringIndex and on the TimingWheel that evicts its points.
+ * Time is controlled by a manual clock.
+ */
+public class ExpiringIndexTest {
+
+	private static final long TIME_TO_LIVE = 1000;
+
+	/**
+	 * A clock that only moves when told to
+	 */
+	static class ManualClock extends Clock {
+		long millis = 1_000_000;
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+	}
+
+	ManualClock clock;
+	ExpiringIndex<Location> index;
+	List<Location> expired;
+
+	@BeforeEach
+	public void setUp() {
+		clock = new ManualClock();
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		tree.setIdentityIndexed(true);
+		index = new ExpiringIndex<>(tree, TIME_TO_LIVE, clock);
+		expired = new ArrayList<>();
+		index.setExpiryListener(expired::add);
+	}
+
+	/**
+	 * Points disappear once their time to live has passed
+	 */
+	@Test
+	public void testExpire() {
+		Location first = new Location("first", 10, 10);
+		Location second = new Location("second", 20, 20);
+		index.insert(first);
+		clock.millis += TIME_TO_LIVE / 2;
+		index.insert(second);
+
+		assertAll(
+				() -> assertEquals(2, index.size()),
+				() -> {
+					clock.millis += TIME_TO_LIVE / 2 + TIME_TO_LIVE / 10;
+					assertEquals(List.of(second), index.getAll());
+					assertEquals(List.of(first), expired);
+				},
+				() -> {
+					clock.millis += TIME_TO_LIVE;
+					assertEquals(0, index.size());
+					assertTrue(index.findNear(20, 20, 1).isEmpty());
+				});
+	}
+
+	/**
+	 * Moving a point renews its deadline
+	 */
+	@Test
+	public void testMoveRenews() {
+		Location moving = new Location("moving", 10, 10);
+		index.insert(moving);
+
+		for(int step=1; step <= 10; step++) {
+			clock.millis += TIME_TO_LIVE / 2;
+			moving.latitude = 10 + step;
+			index.move(moving, 10, 10 + step - 1);
+		}
+
+		assertAll(
+				() -> assertTrue(index.findNear(10, 20, 0).contains(moving)),
+				() -> assertTrue(expired.isEmpty()),
+				() -> {
+					clock.millis += 2 * TIME_TO_LIVE;
+					assertTrue(index.findNear(10, 20, 0).isEmpty());
+					assertEquals(List.of(moving), expired);
+				});
+	}
+
+	/**
+	 * Deadlines far beyond the lowest level of the wheel cascade down and
+	 * expire on the right tick; cancelled entries never expire
+	 */
+	@Test
+	public void testTimingWheel() {
+		TimingWheel<String> wheel = new TimingWheel<>(1, 0);
+		long[] deadlines = { 0, 5, 63, 64, 65, 4095, 4096, 300_000, 20_000_000 };
+
+		for(long deadline: deadlines)
+			wheel.schedule("t"+deadline, deadline);
+		wheel.schedule("cancelled", 100);
+		assertTrue(wheel.cancel("cancelled"));
+
+		long now = 0;
+		for(long deadline: deadlines) {
+			if(deadline > now)
+				assertTrue(wheel.advance(deadline - 1).isEmpty(), "before "+deadline);
+			assertEquals(List.of("t"+deadline), wheel.advance(deadline));
+			now = deadline;
+		}
+		assertEquals(0, wheel.size());
+	}
+
+	/**
+	 * An expiring index survives serialization with its points and their
+	 * deadlines, using the system clock once read
+	 */
+	@Test
+	public void testSerializable() throws IOException, ClassNotFoundException {
+		PointQuadtree<rsa.match.Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		tree.setIdentityIndexed(true);
+		ExpiringIndex<rsa.match.Location> original = new ExpiringIndex<>(tree, 3_600_000);
+		original.insert(new rsa.match.Location(10, 10));
+		original.insert(new rsa.match.Location(20, 20));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(original);
+		}
+		ExpiringIndex<?> copy;
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (ExpiringIndex<?>) in.readObject();
+		}
+
+		assertAll(
+				() -> assertEquals(2, copy.size()),
+				() -> assertEquals(1, copy.findNear(10, 10, 1).size()),
+				() -> assertTrue(copy.expire().isEmpty()));
+	}
+}
@@ -0,0 +1,68 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on a GridIndex, the uniform grid spatial hash.
+ */
+public class GridIndexTest extends SpatialIndexTest {
+
+	private static final double CELL = 5;
+
+	@Override
+	SpatialIndex<Location> create() {
+		return new GridIndex<>(CELL);
+	}
+
+	/**
+	 * Cells are half open and negative coordinates round down
+	 */
+	@Test
+	public void testCell() {
+		GridIndex<Location> grid = new GridIndex<>(CELL);
+
+		assertAll(
+				() -> assertEquals(0, grid.cell(0)),
+				() -> assertEquals(0, grid.cell(4.99)),
+				() -> assertEquals(1, grid.cell(5)),
+				() -> assertEquals(-1, grid.cell(-0.1)),
+				() -> assertThrows(IllegalArgumentException.class, () -> new GridIndex<Location>(0)));
+	}
+
+	/**
+	 * Radius queries spanning one cell or many return the same points
+	 * as a brute force search
+	 */
+	@Test
+	public void testFindNearAcrossCells() {
+		for(double radius: new double[] { CELL/2, CELL, 4*CELL }) {
+			long expected = all.stream()
+					.filter(l -> Trie.getDistance(52, 48, l.x(), l.y()) <= radius)
+					.count();
+
+			assertEquals(expected, index.findNear(52, 48, radius).size());
+		}
+	}
+
+	/**
+	 * The grid has no bounds: points move to and from negative coordinates
+	 */
+	@Test
+	public void testUnbounded() {
+		Location moving = all.get(0);
+		double oldX = moving.x(), oldY = moving.y();
+
+		moving.longitude = -40;
+		index.move(moving, oldX, oldY);
+
+		assertAll(
+				() -> assertEquals(POINTS, index.size()),
+				() -> assertTrue(index.findNear(-40, oldY, 0).contains(moving)),
+				() -> {
+					index.move(moving, -40, oldY);
+					assertEquals(POINTS, index.size());
+				});
+	}
+}
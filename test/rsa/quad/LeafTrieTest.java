@@ -146,6 +146,136 @@ public class LeafTrieTest {
 	}
 
 
+	/**
+	 * Many points with the same coordinates stay in a single leaf
+	 * instead of splitting it without bound
+	 */
+	@Test
+	public void testCoincidentPoints() {
+		Trie<Location> trie = leaf;
+
+		for(int count=0; count < 100*CAPACITY; count++)
+			trie = trie.insert(new Location("same"+count, CENTER_X, CENTER_Y));
+
+		trie.collectNear(CENTER_X, CENTER_Y, SMALL_RADIUS, points);
+
+		assertAll(
+				() -> assertSame(leaf, leaf.insert(CENTER)),
+				() -> assertEquals(100*CAPACITY, points.size()));
+	}
+
+	/**
+	 * A bucket of coincident points is split once one of them is moved
+	 * away inside the leaf
+	 */
+	@Test
+	public void testBucketAfterMove() {
+		LeafTrie<rsa.quad.Location> bucket = new LeafTrie<>(TOP_LEFT_X,TOP_LEFT_Y,BOTTOM_RIGHT_X,BOTTOM_RIGHT_Y);
+		rsa.quad.Location moving = new rsa.quad.Location("moving", CENTER_Y, CENTER_X);
+
+		for(int count=0; count < 2*CAPACITY; count++)
+			assertSame(bucket, bucket.insert(new rsa.quad.Location("same"+count, CENTER_Y, CENTER_X)));
+		bucket.insert(moving);
+
+		moving.longitude = CENTER_X + 3;
+		assertSame(bucket, bucket.move(moving, CENTER_X, CENTER_Y));
+
+		assertTrue(bucket.insert(new rsa.quad.Location("last", CENTER_Y, CENTER_X)) instanceof NodeTrie);
+	}
+
+	/**
+	 * Distinct points that are too close to separate only split the
+	 * leaf down to the maximum depth
+	 */
+	@Test
+	public void testMaxDepth() {
+		Configuration configuration = new Configuration();
+		configuration.setMaxDepth(3);
+
+		Trie<Location> trie = new LeafTrie<>(TOP_LEFT_X,TOP_LEFT_Y,BOTTOM_RIGHT_X,BOTTOM_RIGHT_Y,
+				configuration, null, 0);
+		for(int count=0; count < 2*CAPACITY; count++)
+			trie = trie.insert(new Location(CENTER_X + count*1E-12, CENTER_Y));
+
+		trie.collectAll(points);
+
+		assertEquals(3, height(trie));
+		assertEquals(2*CAPACITY, points.size());
+	}
+
+	/**
+	 * With compression a tight cluster in a large cell does not create
+	 * a chain of nodes with a single populated quadrant
+	 */
+	@Test
+	public void testCompressedHeight() {
+		Configuration configuration = new Configuration();
+		configuration.setCompressed(true);
+		Trie<Location> plain = new LeafTrie<>(0, 0, 1E6, 1E6);
+		Trie<Location> compressed = new LeafTrie<>(0, 0, 1E6, 1E6, configuration, null, 0);
+
+		for(int count=0; count < 4*CAPACITY; count++) {
+			Location location = new Location(1000 + count % 7, 1000 + count / 7);
+			plain = plain.insert(location);
+			compressed = compressed.insert(location);
+		}
+		compressed.collectNear(1003, 1003, 2, points);
+
+		assertTrue(height(plain) > 10);
+		assertTrue(height(compressed) < 6);
+		assertEquals(13, points.size());
+	}
+
+	/**
+	 * Points inserted into a compressed subtree after compression is turned
+	 * off still land in cells that contain them
+	 */
+	@Test
+	public void testCompressionTurnedOff() {
+		Configuration configuration = new Configuration();
+		configuration.setCompressed(true);
+		Trie<Location> trie = new LeafTrie<>(0, 0, 256, 256, configuration, null, 0);
+		for(int count=0; count < 2*CAPACITY; count++)
+			trie = trie.insert(new Location(100 + count % 5 * 0.1, 100 + count / 5 * 0.1));
+
+		configuration.setCompressed(false);
+		trie = trie.insert(new Location(120, 120));
+		trie.collectNear(120, 120, SMALL_RADIUS, points);
+
+		assertEquals(1, points.size());
+		assertEquals(2*CAPACITY + 1, trie.size());
+	}
+
+	/**
+	 * Coordinates cached in the leaf follow a point after it is moved,
+	 * and removal of a single element keeps the others
+	 */
+	@Test
+	public void testMoveUpdatesCoordinates() {
+		LeafTrie<rsa.quad.Location> cached = new LeafTrie<>(TOP_LEFT_X,TOP_LEFT_Y,BOTTOM_RIGHT_X,BOTTOM_RIGHT_Y);
+		rsa.quad.Location moving = new rsa.quad.Location("moving", CENTER_Y, CENTER_X);
+		rsa.quad.Location fixed = new rsa.quad.Location("fixed", CENTER_Y, CENTER_X);
+		cached.insert(fixed);
+		cached.insert(moving);
+
+		moving.longitude = CENTER_X + 3;
+		cached.move(moving, CENTER_X, CENTER_Y);
+
+		Set<rsa.quad.Location> near = new HashSet<>();
+		Set<rsa.quad.Location> moved = new HashSet<>();
+		cached.collectNear(CENTER_X, CENTER_Y, SMALL_RADIUS, near);
+		cached.collectNear(CENTER_X + 3, CENTER_Y, SMALL_RADIUS, moved);
+
+		assertAll(
+				() -> assertEquals(Set.of(fixed), near),
+				() -> assertEquals(Set.of(moving), moved),
+				() -> {
+					assertTrue(cached.removeElement(fixed, CENTER_X, CENTER_Y));
+					assertSame(moving, cached.get(0));
+					assertEquals(1, cached.size());
+				});
+	}
+
 	/**
 	 * Find near points on a QuadTree having a single leaf
 	 */
@@ -180,6 +310,19 @@ public class LeafTrieTest {
 		assertEquals(9,points.size());
 	}
 
+	/**
+	 * Number of node levels above the deepest leaf
+	 */
+	static int height(Trie<?> trie) {
+		if(!(trie instanceof NodeTrie<?> node))
+			return 0;
+
+		int height = 0;
+		for(Trie.Quadrant quadrant: Trie.Quadrant.values())
+			height = Math.max(height, height(node.getQuadrant(quadrant)));
+		return height + 1;
+	}
+
 	private void generateLocationsInGrid() {
 
 		for(int x=CENTER_X-1; x <= CENTER_X+1; x++)
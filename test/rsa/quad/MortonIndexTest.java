@@ -0,0 +1,53 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on a MortonIndex, the linearised spatial index.
+ */
+public class MortonIndexTest extends SpatialIndexTest {
+
+	@Override
+	SpatialIndex<Location> create() {
+		return new MortonIndex<>(0, 0, SIDE, SIDE);
+	}
+
+	/**
+	 * Interleaving places x bits in even positions and y bits in odd positions
+	 */
+	@Test
+	public void testInterleave() {
+		assertAll(
+				() -> assertEquals(0b01, MortonIndex.interleave(1, 0)),
+				() -> assertEquals(0b10, MortonIndex.interleave(0, 1)),
+				() -> assertEquals(0b1111, MortonIndex.interleave(3, 3)),
+				() -> assertEquals(0b10011, MortonIndex.interleave(5, 1)));
+	}
+
+	/**
+	 * Points outside the bounds are rejected
+	 */
+	@Test
+	public void testOutOfBounds() {
+		assertThrows(PointOutOfBoundException.class,
+				() -> index.insert(new Location("out", 0, 2*SIDE)));
+	}
+
+	/**
+	 * Bulk loading gives the same content as individual insertions
+	 */
+	@Test
+	public void testBulkLoad() {
+		MortonIndex<Location> loaded = new MortonIndex<>(0, 0, SIDE, SIDE);
+		loaded.bulkLoad(all);
+
+		assertAll(
+				() -> assertEquals(POINTS, loaded.size()),
+				() -> assertEquals(index.findNear(50, 50, 10), loaded.findNear(50, 50, 10)),
+				() -> assertEquals(new HashSet<>(all), new HashSet<>(loaded.getAll())));
+	}
+}
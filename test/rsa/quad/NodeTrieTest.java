@@ -5,7 +5,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
@@ -128,6 +130,64 @@ public class NodeTrieTest {
 
 	}
 
+	/**
+	 * The subtree count follows insertions and removals, including
+	 * those that split leaves
+	 */
+	@Test
+	public void testSize() {
+		List<Location> inserted = new ArrayList<>();
+
+		for(int count=0; count < REPETITIONS; count++) {
+			Location location = new Location(
+					CENTER_X + random.nextDouble() - 0.5,
+					CENTER_Y + random.nextDouble() - 0.5);
+			inserted.add(location);
+			node.insert(location);
+		}
+
+		assertEquals(REPETITIONS, node.size());
+
+		for(int count=0; count < REPETITIONS/2; count++)
+			node.remove(inserted.get(count));
+
+		node.collectAll(points);
+		assertAll(
+				() -> assertEquals(REPETITIONS - REPETITIONS/2, node.size()),
+				() -> assertEquals(points.size(), node.size()));
+	}
+
+	/**
+	 * After most points are removed, emptied subtrees are merged back into
+	 * leaves and the node itself can be replaced by a single leaf
+	 */
+	@Test
+	public void testCompact() {
+		List<Location> inserted = new ArrayList<>();
+
+		for(int count=0; count < REPETITIONS; count++) {
+			Location location = new Location(
+					CENTER_X + random.nextDouble() - 0.5,
+					CENTER_Y + random.nextDouble() - 0.5);
+			inserted.add(location);
+			node.insert(location);
+		}
+
+		for(Location location: inserted.subList(1, REPETITIONS))
+			node.remove(location);
+
+		VisitorTest.CountingVisitor visitor = new VisitorTest.CountingVisitor();
+		for(Trie.Quadrant quadrant: Trie.Quadrant.values())
+			node.getQuadrant(quadrant).accept(visitor);
+
+		Trie<Location> compacted = node.compact();
+
+		assertAll(
+				() -> assertEquals(0, visitor.nodeCount),
+				() -> assertTrue(compacted instanceof LeafTrie),
+				() -> assertEquals(inserted.get(0), compacted.find(inserted.get(0))));
+	}
+
 	/**
 	 * A string representation, other than the default one.
 	 */
@@ -0,0 +1,79 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on an OffHeapQuadtree, the quadtree stored in a direct buffer.
+ */
+public class OffHeapQuadtreeTest extends SpatialIndexTest {
+
+	@Override
+	SpatialIndex<Location> create() {
+		return new OffHeapQuadtree<>(0, 0, SIDE, SIDE);
+	}
+
+	/**
+	 * Removing every point empties the tree and releases the node records
+	 */
+	@Test
+	public void testRemoveAll() {
+		OffHeapQuadtree<Location> tree = (OffHeapQuadtree<Location>) index;
+
+		assertAll(
+				() -> assertTrue(tree.nodeCount() > 1),
+				() -> {
+					for(Location location: all)
+						assertTrue(tree.remove(location));
+					assertEquals(0, tree.size());
+					assertEquals(1, tree.nodeCount());
+					assertTrue(tree.getAll().isEmpty());
+				},
+				() -> assertThrows(PointOutOfBoundException.class,
+						() -> tree.insert(new Location("out", 0, 2*SIDE))));
+	}
+
+	/**
+	 * Coincident points overflow into chained leaves and are removed by identity
+	 */
+	@Test
+	public void testCoincidentPoints() {
+		OffHeapQuadtree<Location> same = new OffHeapQuadtree<>(0, 0, SIDE, SIDE);
+		List<Location> locations = new ArrayList<>();
+
+		for(int i=0; i < 50; i++) {
+			Location location = new Location("same"+i, 10, 10);
+			locations.add(location);
+			same.insert(location);
+		}
+
+		assertAll(
+				() -> assertEquals(50, same.findNear(10, 10, 0).size()),
+				() -> {
+					assertTrue(same.remove(locations.get(7)));
+					assertFalse(same.findNear(10, 10, 0).contains(locations.get(7)));
+					assertEquals(49, same.size());
+				});
+	}
+
+	/**
+	 * Settings the off-heap layout cannot honour are rejected
+	 */
+	@Test
+	public void testUnsupportedConfiguration() {
+		Configuration median = new Configuration();
+		median.setSplitPolicy(Configuration.SplitPolicy.MEDIAN);
+		Configuration compressed = new Configuration();
+		compressed.setCompressed(true);
+
+		assertAll(
+				() -> assertThrows(IllegalArgumentException.class,
+						() -> new OffHeapQuadtree<Location>(0, 0, SIDE, SIDE, median)),
+				() -> assertThrows(IllegalArgumentException.class,
+						() -> new OffHeapQuadtree<Location>(0, 0, SIDE, SIDE, compressed)));
+	}
+}
@@ -0,0 +1,87 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import rsa.match.Location;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on a PersistentQuadtree, the immutable quadtree.
+ * Queries and updates through the SpatialIndex interface are
+ * tested on the SnapshotQuadtree that publishes its versions.
+ */
+public class PersistentQuadtreeTest {
+
+	private static final int SIDE = 100;
+
+	/**
+	 * Updates leave earlier versions unchanged
+	 */
+	@Test
+	public void testVersionsAreImmutable() {
+		List<Location> all = new ArrayList<>();
+		PersistentQuadtree<Location> tree = new PersistentQuadtree<>(0, 0, SIDE, SIDE);
+		for(int x=0; x < SIDE; x += 5)
+			for(int y=0; y < SIDE; y += 5) {
+				Location location = new Location("l"+x+"-"+y, x, y);
+				all.add(location);
+				tree = tree.insert(location);
+			}
+
+		PersistentQuadtree<Location> before = tree;
+		PersistentQuadtree<Location> after = tree;
+		for(int i=0; i < all.size(); i += 2)
+			after = after.remove(all.get(i));
+		PersistentQuadtree<Location> last = after;
+
+		assertAll(
+				() -> assertEquals(all.size(), before.size()),
+				() -> assertEquals(new HashSet<>(all), new HashSet<>(before.getAll())),
+				() -> assertEquals(all.size()/2, last.size()),
+				() -> assertFalse(last.getAll().contains(all.get(0))),
+				() -> assertSame(last, last.remove(all.get(0))),
+				() -> assertThrows(PointOutOfBoundException.class,
+						() -> before.insert(new Location("out", 2*SIDE, 0))));
+	}
+
+	/**
+	 * Coincident points stay together and are removed by identity
+	 */
+	@Test
+	public void testCoincidentPoints() {
+		PersistentQuadtree<Location> same = new PersistentQuadtree<>(0, 0, SIDE, SIDE);
+		Location first = new Location("first", 10, 10);
+		same = same.insert(first);
+		for(int i=0; i < 50; i++)
+			same = same.insert(new Location("same"+i, 10, 10));
+
+		PersistentQuadtree<Location> removed = same.remove(first);
+
+		assertAll(
+				() -> assertEquals(50, removed.findNear(10, 10, 0).size()),
+				() -> assertFalse(removed.findNear(10, 10, 0).contains(first)));
+	}
+
+	/**
+	 * Settings a tree that always splits at the midpoint cannot honour
+	 * are rejected
+	 */
+	@Test
+	public void testUnsupportedConfiguration() {
+		Configuration median = new Configuration();
+		median.setSplitPolicy(Configuration.SplitPolicy.MEDIAN);
+		Configuration compressed = new Configuration();
+		compressed.setCompressed(true);
+
+		assertAll(
+				() -> assertThrows(IllegalArgumentException.class,
+						() -> new PersistentQuadtree<Location>(0, 0, SIDE, SIDE, median)),
+				() -> assertThrows(IllegalArgumentException.class,
+						() -> new PersistentQuadtree<Location>(0, 0, SIDE, SIDE, compressed)));
+	}
+}
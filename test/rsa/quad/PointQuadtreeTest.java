@@ -4,12 +4,17 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -278,6 +283,605 @@ public class PointQuadtreeTest {
 	}
 
 
+	/**
+	 * The k nearest points are returned ordered by distance and
+	 * match a brute force search over all inserted points
+	 */
+	@Test
+	public void testFindNearest() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		List<Location> all = new ArrayList<>();
+		Random random = new Random(1);
+
+		for(int i=0; i < 500; i++) {
+			Location location = new Location("l"+i,
+					100*random.nextDouble(), 100*random.nextDouble());
+			all.add(location);
+			tree.insert(location);
+		}
+
+		all.sort(Comparator.comparingDouble(
+				l -> Trie.getDistance(CENTER_X, CENTER_Y, l.x(), l.y())));
+
+		assertAll(
+				() -> assertEquals(all.subList(0, 7),
+						tree.findNearest(CENTER_X, CENTER_Y, 7)),
+				() -> assertEquals(all, tree.findNearest(CENTER_X, CENTER_Y, 1000)),
+				() -> assertEquals(0, tree.findNearest(CENTER_X, CENTER_Y, 0).size()));
+	}
+
+	/**
+	 * A point that moved is found near its new position and no longer
+	 * near the old one, whether it stays in the same leaf or not
+	 */
+	@Test
+	public void testMove() {
+		PointQuadtree<rsa.quad.Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		rsa.quad.Location moving = new rsa.quad.Location("moving", 10, 10);
+
+		for(int i=0; i < 100; i++)
+			tree.insert(new rsa.quad.Location("fixed"+i, i, 99-i));
+		tree.insert(moving);
+
+		assertAll(
+				() -> {
+					moving.latitude = 10.5;
+					tree.move(moving, 10, 10);
+
+					assertTrue(tree.findNear(10, 10.5, 0).contains(moving));
+				},
+				() -> {
+					moving.longitude = 90;
+					moving.latitude = 80;
+					tree.move(moving, 10, 10.5);
+
+					assertAll(
+							() -> assertFalse(tree.findNear(10, 10.5, 1).contains(moving)),
+							() -> assertTrue(tree.findNear(90, 80, 0).contains(moving)),
+							() -> assertEquals(101, tree.size()));
+				});
+	}
+
+	/**
+	 * Sequential and parallel streams visit every point exactly once
+	 */
+	@Test
+	public void testStreams() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		Set<Location> all = new HashSet<>();
+
+		for(int x=0; x < 100; x += 3)
+			for(int y=0; y < 100; y += 3) {
+				Location location = new Location("", x, y);
+				all.add(location);
+				tree.insert(location);
+			}
+
+		assertAll(
+				() -> assertEquals(all.size(), tree.stream().count()),
+				() -> assertEquals(all.size(), tree.parallelStream().count()),
+				() -> assertEquals(all, tree.parallelStream().collect(Collectors.toSet())),
+				() -> assertEquals(all.size(), tree.spliterator().estimateSize()));
+	}
+
+	/**
+	 * A bulk loaded tree answers queries as one built by single insertions
+	 */
+	@Test
+	public void testBulkLoad() {
+		PointQuadtree<Location> loaded = new PointQuadtree<>(0, 0, 100, 100);
+		PointQuadtree<Location> inserted = new PointQuadtree<>(0, 0, 100, 100);
+		List<Location> batch = new ArrayList<>();
+		Random random = new Random(2);
+
+		for(int i=0; i < 1000; i++)
+			batch.add(new Location("l"+i, 100*random.nextDouble(), 100*random.nextDouble()));
+		for(int i=0; i < 50; i++)
+			batch.add(new Location("same"+i, CENTER_X, CENTER_Y));
+
+		loaded.bulkLoad(batch);
+		for(Location location: batch)
+			inserted.insert(location);
+
+		assertAll(
+				() -> assertEquals(batch.size(), loaded.size()),
+				() -> assertEquals(inserted.findNear(CENTER_X, CENTER_Y, 10),
+						loaded.findNear(CENTER_X, CENTER_Y, 10)),
+				() -> assertEquals(inserted.findNear(80, 20, 5), loaded.findNear(80, 20, 5)),
+				() -> assertThrows(PointOutOfBoundException.class,
+						() -> loaded.bulkLoad(List.of(new Location("out",
+								TOO_LARGE_COORDINATE*10, CENTER_Y)))));
+	}
+
+	/**
+	 * With the identity index, removing an object leaves other objects at
+	 * the same coordinates, and objects are moved without their old position
+	 */
+	@Test
+	public void testIdentityIndex() {
+		PointQuadtree<rsa.quad.Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		rsa.quad.Location first = new rsa.quad.Location("first", CENTER_Y, CENTER_X);
+		rsa.quad.Location second = new rsa.quad.Location("second", CENTER_Y, CENTER_X);
+
+		tree.setIdentityIndexed(true);
+		tree.insert(first);
+		tree.insert(second);
+
+		assertAll(
+				() -> {
+					assertTrue(tree.remove(first));
+					assertAll(
+							() -> assertFalse(tree.contains(first)),
+							() -> assertTrue(tree.contains(second)),
+							() -> assertFalse(tree.remove(first)),
+							() -> assertEquals(1, tree.size()));
+				},
+				() -> {
+					second.latitude = 90;
+					tree.move(second);
+
+					assertAll(
+							() -> assertEquals(Set.of(second), tree.findNear(CENTER_X, 90, 0)),
+							() -> assertTrue(tree.findNear(CENTER_X, CENTER_Y, 1).isEmpty()));
+				});
+	}
+
+	/**
+	 * A point whose coordinates changed stays filed at its indexed position
+	 * when its leaf splits, so the later move relocates it instead of
+	 * inserting a second copy
+	 */
+	@Test
+	public void testSplitBeforeMove() {
+		PointQuadtree<rsa.quad.Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		rsa.quad.Location moving = new rsa.quad.Location("moving", 10, 10);
+
+		tree.setCapacity(4);
+		tree.setIdentityIndexed(true);
+		tree.insert(moving);
+		for(int i=1; i <= 3; i++)
+			tree.insert(new rsa.quad.Location("fixed"+i, 10*i, 60));
+
+		moving.longitude = 90;
+		moving.latitude = 90;
+		tree.insert(new rsa.quad.Location("split", 60, 20));
+		tree.move(moving, 10, 10);
+
+		assertAll(
+				() -> assertEquals(5, tree.size()),
+				() -> assertEquals(1, tree.getAll().stream().filter(l -> l == moving).count()),
+				() -> assertEquals(Set.of(moving), tree.findNear(90, 90, 0)),
+				() -> assertTrue(tree.findNear(10, 10, 0).isEmpty()));
+	}
+
+	/**
+	 * Turning on the identity index records the position where each point
+	 * was indexed, even if its coordinates have changed since
+	 */
+	@Test
+	public void testIdentityIndexAfterChange() {
+		PointQuadtree<rsa.quad.Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		rsa.quad.Location moving = new rsa.quad.Location("moving", 10, 10);
+
+		for(int i=0; i < 100; i++)
+			tree.insert(new rsa.quad.Location("fixed"+i, i, 99-i));
+		tree.insert(moving);
+
+		moving.longitude = 90;
+		moving.latitude = 80;
+		tree.setIdentityIndexed(true);
+		tree.move(moving);
+
+		assertAll(
+				() -> assertEquals(101, tree.size()),
+				() -> assertEquals(Set.of(moving), tree.findNear(90, 80, 0)),
+				() -> assertTrue(tree.remove(moving)),
+				() -> assertEquals(100, tree.size()));
+	}
+
+	/**
+	 * The callback query visits the same points as findNear and
+	 * stops as soon as the visitor returns false
+	 */
+	@Test
+	public void testForEachNear() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+
+		for(int x=0; x < 100; x += 2)
+			for(int y=0; y < 100; y += 2)
+				tree.insert(new Location("", x, y));
+
+		Set<Location> visited = new HashSet<>();
+		tree.forEachNear(CENTER_X, CENTER_Y, 10, visited::add);
+
+		List<Location> firstThree = new ArrayList<>();
+		boolean completed = tree.forEachNearWhile(CENTER_X, CENTER_Y, 10,
+				location -> firstThree.add(location) && firstThree.size() < 3);
+
+		assertAll(
+				() -> assertEquals(tree.findNear(CENTER_X, CENTER_Y, 10), visited),
+				() -> assertFalse(completed),
+				() -> assertEquals(3, firstThree.size()));
+	}
+
+	/**
+	 * Box and polygon queries return exactly the points inside the region
+	 */
+	@Test
+	public void testFindInBoxAndPolygon() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		List<Location> all = new ArrayList<>();
+
+		for(int x=0; x <= 100; x++)
+			for(int y=0; y <= 100; y++) {
+				Location location = new Location("", x, y);
+				all.add(location);
+				tree.insert(location);
+			}
+
+		// concave "L" shaped region
+		Polygon polygon = new Polygon(
+				new double[] { 10.5, 60.5, 60.5, 30.5, 30.5, 10.5 },
+				new double[] { 10.5, 10.5, 30.5, 30.5, 80.5, 80.5 });
+
+		Set<Location> inBox = new HashSet<>();
+		Set<Location> inPolygon = new HashSet<>();
+		for(Location location: all) {
+			if(location.x() >= 20 && location.x() <= 45 && location.y() >= 5 && location.y() <= 70)
+				inBox.add(location);
+			if(polygon.contains(location.x(), location.y()))
+				inPolygon.add(location);
+		}
+
+		List<Location> box = tree.findInBox(20, 5, 45, 70);
+
+		assertAll(
+				() -> assertEquals(inBox.size(), box.size()),
+				() -> assertEquals(inBox, new HashSet<>(box)),
+				() -> assertEquals(50*20 + 20*50, inPolygon.size()),
+				() -> assertEquals(inPolygon, new HashSet<>(tree.findInPolygon(polygon))));
+	}
+
+	/**
+	 * A growable quadtree accepts points outside its initial bounds
+	 * and keeps the points it already had
+	 */
+	@Test
+	public void testGrowable() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 10, 10);
+		List<Location> inserted = new ArrayList<>();
+
+		tree.setGrowable(true);
+		for(int i=0; i < 100; i++)
+			inserted.add(new Location("in"+i, i % 10, i / 10));
+		inserted.add(new Location("west", -25, 5));
+		inserted.add(new Location("far north east", 1000, 5000));
+		inserted.add(new Location("south", 3, -0.5));
+
+		for(Location location: inserted)
+			tree.insert(location);
+
+		assertAll(
+				() -> assertEquals(inserted.size(), tree.size()),
+				() -> assertEquals(new HashSet<>(inserted), new HashSet<>(tree.getAll())),
+				() -> assertEquals(Set.of(inserted.get(0)), tree.findNear(0, 0, 0.5)),
+				() -> assertEquals(inserted.get(101), tree.find(inserted.get(101))),
+				() -> assertEquals(100, tree.findInBox(0, 0, 10, 10).size()));
+	}
+
+	/**
+	 * Without an identity index, remove() takes out only the given
+	 * object and delete() every object at its coordinates
+	 */
+	@Test
+	public void testRemoveByIdentity() {
+		PointQuadtree<rsa.quad.Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		rsa.quad.Location first = new rsa.quad.Location("first", CENTER_Y, CENTER_X);
+		rsa.quad.Location second = new rsa.quad.Location("second", CENTER_Y, CENTER_X);
+		rsa.quad.Location third = new rsa.quad.Location("third", CENTER_Y, CENTER_X);
+		tree.insert(first);
+		tree.insert(second);
+		tree.insert(third);
+
+		assertAll(
+				() -> {
+					assertTrue(tree.remove(first));
+					assertFalse(tree.remove(first));
+					assertEquals(Set.of(second, third), tree.findNear(CENTER_X, CENTER_Y, 0));
+				},
+				() -> {
+					tree.delete(second);
+					assertEquals(0, tree.size());
+				});
+	}
+
+	/**
+	 * Each quadtree keeps its own copy of the configuration, and
+	 * median splits answer queries as midpoint splits do
+	 */
+	@Test
+	public void testConfiguration() {
+		Configuration configuration = new Configuration();
+		configuration.setCapacity(2);
+		configuration.setSplitPolicy(Configuration.SplitPolicy.MEDIAN);
+
+		PointQuadtree<Location> median = new PointQuadtree<>(0, 0, 100, 100, configuration);
+		PointQuadtree<Location> midpoint = new PointQuadtree<>(0, 0, 100, 100);
+		configuration.setCapacity(1000);
+
+		Random random = new Random(3);
+		for(int i=0; i < 500; i++) {
+			Location location = new Location("l"+i,
+					100*Math.pow(random.nextDouble(), 3), 100*random.nextDouble());
+			median.insert(location);
+			midpoint.insert(location);
+		}
+
+		assertAll(
+				() -> assertEquals(2, median.getConfiguration().getCapacity()),
+				() -> assertEquals(CAPACITY, midpoint.getConfiguration().getCapacity()),
+				() -> assertEquals(midpoint.findNear(5, 50, 10), median.findNear(5, 50, 10)),
+				() -> assertEquals(new HashSet<>(midpoint.findInBox(0, 20, 30, 40)),
+						new HashSet<>(median.findInBox(0, 20, 30, 40))));
+	}
+
+	/**
+	 * The configuration returned by a quadtree is a copy; only the
+	 * capacity can be changed afterwards, through the quadtree
+	 */
+	@Test
+	public void testConfigurationCopy() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		tree.getConfiguration().setCapacity(1000);
+
+		assertEquals(CAPACITY, tree.getConfiguration().getCapacity());
+
+		tree.setCapacity(1);
+		for(int i=0; i < 100; i++)
+			tree.insert(new Location("l"+i, i, i));
+
+		assertAll(
+				() -> assertEquals(1, tree.getConfiguration().getCapacity()),
+				() -> assertEquals(100, tree.size()),
+				() -> assertEquals(3, tree.findNear(50, 50, 2).size()),
+				() -> assertThrows(IllegalArgumentException.class, () -> tree.setCapacity(0)));
+	}
+
+	/**
+	 * Large radius queries, where most cells are fully covered,
+	 * return the same points as a brute force search
+	 */
+	@Test
+	public void testFindNearLargeRadius() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		List<Location> all = new ArrayList<>();
+		Random random = new Random(4);
+
+		for(int i=0; i < 2000; i++) {
+			Location location = new Location("l"+i, 100*random.nextDouble(), 100*random.nextDouble());
+			all.add(location);
+			tree.insert(location);
+		}
+
+		for(double radius: new double[] { 20, 45, 80, 200 }) {
+			Set<Location> expected = new HashSet<>();
+			for(Location location: all)
+				if(Trie.getDistance(40, 60, location.x(), location.y()) <= radius)
+					expected.add(location);
+
+			assertEquals(expected, tree.findNear(40, 60, radius));
+			assertEquals(expected.size(), tree.findNear(new Location(40, 60), radius).size());
+		}
+	}
+
+	/**
+	 * Counting queries agree with the size of the corresponding searches
+	 */
+	@Test
+	public void testCountNearAndInBox() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		Random random = new Random(5);
+
+		for(int i=0; i < 2000; i++)
+			tree.insert(new Location("l"+i, 100*random.nextDouble(), 100*random.nextDouble()));
+
+		assertAll(
+				() -> assertEquals(tree.findNear(30, 70, 5).size(), tree.countNear(30, 70, 5)),
+				() -> assertEquals(tree.findNear(30, 70, 60).size(), tree.countNear(30, 70, 60)),
+				() -> assertEquals(2000, tree.countNear(50, 50, 100)),
+				() -> assertEquals(0, tree.countNear(500, 500, 10)),
+				() -> assertEquals(tree.findInBox(10, 20, 75, 33).size(), tree.countInBox(10, 20, 75, 33)),
+				() -> assertEquals(2000, tree.countInBox(-1, -1, 101, 101)));
+	}
+
+	/**
+	 * A batch of radius queries gives, for each centre, the same
+	 * result as a single query
+	 */
+	@Test
+	public void testFindNearBatch() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		Random random = new Random(6);
+
+		for(int i=0; i < 2000; i++)
+			tree.insert(new Location("l"+i, 100*random.nextDouble(), 100*random.nextDouble()));
+
+		double[] xs = new double[50];
+		double[] ys = new double[50];
+		for(int c=0; c < xs.length; c++) {
+			xs[c] = 120*random.nextDouble() - 10;
+			ys[c] = 120*random.nextDouble() - 10;
+		}
+
+		List<Set<Location>> batch = tree.findNearBatch(xs, ys, 7);
+
+		assertEquals(xs.length, batch.size());
+		for(int c=0; c < xs.length; c++)
+			assertEquals(tree.findNear(xs[c], ys[c], 7), batch.get(c));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> tree.findNearBatch(new double[1], new double[2], 7));
+	}
+
+	/**
+	 * Paging through a region with a cursor, or resuming it from its
+	 * token on every page, returns each point of the region exactly once
+	 */
+	@Test
+	public void testCursor() {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100);
+		Random random = new Random(31);
+
+		for(int i=0; i < 2000; i++)
+			tree.insert(new Location("l"+i, 100*random.nextDouble(), 100*random.nextDouble()));
+
+		List<Location> paged = new ArrayList<>();
+		Cursor<Location> cursor = tree.openCursor(20, 30, 70, 90);
+		while(cursor.hasNext())
+			paged.addAll(cursor.next(37));
+
+		List<Location> resumed = new ArrayList<>();
+		Cursor<Location> circle = tree.openCursor(50, 50, 30);
+		while(circle.hasNext()) {
+			resumed.addAll(circle.next(37));
+			if(circle.hasNext())
+				circle = tree.resumeCursor(circle.getToken());
+		}
+
+		assertAll(
+				() -> assertEquals(new HashSet<>(tree.findInBox(20, 30, 70, 90)), new HashSet<>(paged)),
+				() -> assertEquals(tree.findInBox(20, 30, 70, 90).size(), paged.size()),
+				() -> assertEquals(tree.findNear(50, 50, 30), new HashSet<>(resumed)),
+				() -> assertEquals(tree.findNear(50, 50, 30).size(), resumed.size()),
+				() -> assertTrue(tree.openCursor(200, 200, 1).next(10).isEmpty()),
+				() -> assertNull(tree.openCursor(200, 200, 1).getToken()),
+				() -> assertThrows(IllegalArgumentException.class, () -> tree.resumeCursor("box:1,2:0:0")));
+	}
+
+	/**
+	 * A compressed quadtree over clustered points answers queries like
+	 * a brute force search, also after points move between clusters
+	 */
+	@Test
+	public void testCompressed() {
+		Configuration configuration = new Configuration();
+		configuration.setCompressed(true);
+		PointQuadtree<rsa.quad.Location> tree = new PointQuadtree<>(0, 0, 1E6, 1E6, configuration);
+		List<rsa.quad.Location> all = new ArrayList<>();
+		Random random = new Random(29);
+
+		for(int i=0; i < 1000; i++) {
+			double center = i % 2 == 0 ? 1000 : 700000;
+			rsa.quad.Location location = new rsa.quad.Location("l"+i,
+					center + random.nextDouble(), center + random.nextDouble());
+			all.add(location);
+			tree.insert(location);
+		}
+		for(int i=0; i < 100; i++) {
+			rsa.quad.Location location = all.get(i);
+			double oldX = location.x(), oldY = location.y();
+			location.latitude = 1E6*random.nextDouble();
+			location.longitude = 1E6*random.nextDouble();
+			tree.move(location, oldX, oldY);
+		}
+		for(int i=100; i < 200; i++)
+			tree.remove(all.get(i));
+		List<rsa.quad.Location> kept = new ArrayList<>(all.subList(0, 100));
+		kept.addAll(all.subList(200, all.size()));
+
+		for(double[] query: new double[][] { {1000.5, 1000.5, 0.3}, {700000, 700000, 2}, {5E5, 5E5, 4E5} }) {
+			Set<rsa.quad.Location> expected = new HashSet<>();
+			for(rsa.quad.Location location: kept)
+				if(Trie.getDistance(query[0], query[1], location.x(), location.y()) <= query[2])
+					expected.add(location);
+
+			assertEquals(expected, tree.findNear(query[0], query[1], query[2]));
+		}
+		assertEquals(kept.size(), tree.size());
+		assertEquals(new HashSet<>(kept), new HashSet<>(tree.getAll()));
+	}
+
+	/**
+	 * Turning compression off on the configuration returned by a
+	 * compressed quadtree leaves the tree, and points inserted
+	 * afterwards, reachable by queries
+	 */
+	@Test
+	public void testCompressedFixed() {
+		Configuration configuration = new Configuration();
+		configuration.setCompressed(true);
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 256, 256, configuration);
+		for(int i=0; i < 20; i++)
+			tree.insert(new Location("l"+i, 100 + i % 5 * 0.1, 100 + i / 5 * 0.1));
+
+		tree.getConfiguration().setCompressed(false);
+		Location far = new Location("far", 240, 240);
+		tree.insert(far);
+
+		assertAll(
+				() -> assertTrue(tree.getConfiguration().isCompressed()),
+				() -> assertEquals(Set.of(far), tree.findNear(240, 240, 1)),
+				() -> assertEquals(21, tree.size()));
+	}
+
+	/**
+	 * Top-K by score within a radius matches sorting all nearby points,
+	 * and follows score changes once the point is moved
+	 */
+	@Test
+	public void testFindTopNear() {
+		Map<Location,Double> scores = new IdentityHashMap<>();
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100, new Configuration(), scores::get);
+		Random random = new Random(23);
+
+		for(int i=0; i < 2000; i++) {
+			Location location = new Location("l"+i, 100*random.nextDouble(), 100*random.nextDouble());
+			scores.put(location, random.nextDouble());
+			tree.insert(location);
+		}
+
+		List<Location> expected = tree.findNear(40, 40, 25).stream()
+				.sorted(Comparator.comparingDouble(scores::get).reversed())
+				.limit(10)
+				.collect(Collectors.toList());
+		Location best = expected.get(0);
+
+		assertAll(
+				() -> assertEquals(expected, tree.findTopNear(40, 40, 25, 10)),
+				() -> assertEquals(expected.subList(1, 4),
+						tree.findTopNear(40, 40, 25, 3, location -> location != best)),
+				() -> {
+					scores.put(best, -1.0);
+					tree.move(best, best.x(), best.y());
+					assertFalse(tree.findTopNear(40, 40, 25, 10).contains(best));
+				},
+				() -> assertThrows(IllegalStateException.class,
+						() -> new PointQuadtree<Location>(0, 0, 100, 100).findTopNear(40, 40, 25, 10)));
+	}
+
+	/**
+	 * A quadtree with a score can be serialized and keeps answering
+	 * top-K queries once read
+	 */
+	@Test
+	public void testScoreSerializable() throws IOException, ClassNotFoundException {
+		PointQuadtree<Location> tree = new PointQuadtree<>(0, 0, 100, 100, new Configuration(), Location::x);
+		for(int i=0; i < 100; i++)
+			tree.insert(new Location("l"+i, i, 50));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(tree);
+		}
+		PointQuadtree<?> copy;
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			copy = (PointQuadtree<?>) in.readObject();
+		}
+
+		assertEquals(List.of(60.0, 59.0, 58.0),
+				copy.findTopNear(50, 50, 10, 3).stream().map(point -> point.x()).collect(Collectors.toList()));
+	}
+
 	/**
 	 * Load Portuguese locations file into a quad tree
 	 * Retrieve locations near Porto and check them against expected results
@@ -0,0 +1,39 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test on a SnapshotQuadtree, the index that publishes
+ * versions of a PersistentQuadtree.
+ */
+public class SnapshotQuadtreeTest extends SpatialIndexTest {
+
+	@Override
+	SpatialIndex<Location> create() {
+		return new SnapshotQuadtree<>(0, 0, SIDE, SIDE);
+	}
+
+	/**
+	 * Snapshots taken before a write do not see it
+	 */
+	@Test
+	public void testSnapshot() {
+		SnapshotQuadtree<Location> snapshots = (SnapshotQuadtree<Location>) index;
+		Location moving = all.get(0);
+		double oldX = moving.x(), oldY = moving.y();
+
+		PersistentQuadtree<Location> snapshot = snapshots.snapshot();
+		moving.longitude = SIDE - 1;
+		moving.latitude = 1;
+		snapshots.move(moving, oldX, oldY);
+
+		assertAll(
+				() -> assertTrue(snapshot.findNear(oldX, oldY, 0).contains(moving)),
+				() -> assertTrue(snapshots.findNear(SIDE - 1, 1, 0).contains(moving)),
+				() -> assertTrue(snapshots.remove(moving)),
+				() -> assertEquals(POINTS - 1, snapshots.size()),
+				() -> assertEquals(POINTS, snapshot.size()));
+	}
+}
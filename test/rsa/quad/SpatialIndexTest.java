@@ -0,0 +1,125 @@
+package rsa.quad;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests shared by every SpatialIndex implementation, run on an index
+ * filled with random points. Query results are checked against a brute
+ * force search over the inserted points.
+ */
+public abstract class SpatialIndexTest {
+
+	static final int SIDE = 100;
+	static final int POINTS = 2000;
+
+	SpatialIndex<Location> index;
+	List<Location> all;
+
+	/**
+	 * An empty index covering at least the square from (0,0) to (SIDE,SIDE)
+	 */
+	abstract SpatialIndex<Location> create();
+
+	@BeforeEach
+	public void setUp() {
+		index = create();
+		all = new ArrayList<>();
+		Random random = new Random(7);
+
+		for(int i=0; i < POINTS; i++) {
+			Location location = new Location("l"+i, SIDE*random.nextDouble(), SIDE*random.nextDouble());
+			all.add(location);
+			index.insert(location);
+		}
+	}
+
+	/**
+	 * Radius queries return exactly the points within the radius
+	 */
+	@Test
+	public void testFindNear() {
+		for(double radius: new double[] { 0.5, 3, 17, 150 }) {
+			Set<Location> expected = new HashSet<>();
+			for(Location location: all)
+				if(Trie.getDistance(33, 61, location.x(), location.y()) <= radius)
+					expected.add(location);
+
+			assertEquals(expected, index.findNear(33, 61, radius));
+		}
+	}
+
+	/**
+	 * Box queries return exactly the points inside the box
+	 */
+	@Test
+	public void testFindInBox() {
+		Set<Location> expected = new HashSet<>();
+		for(Location location: all)
+			if(location.x() >= 12 && location.x() <= 47 && location.y() >= 70 && location.y() <= 99)
+				expected.add(location);
+
+		assertEquals(expected, new HashSet<>(index.findInBox(12, 70, 47, 99)));
+	}
+
+	/**
+	 * Every inserted point is listed once
+	 */
+	@Test
+	public void testGetAll() {
+		assertAll(
+				() -> assertEquals(POINTS, index.size()),
+				() -> assertEquals(POINTS, index.getAll().size()),
+				() -> assertEquals(new HashSet<>(all), new HashSet<>(index.getAll())));
+	}
+
+	/**
+	 * Removal is by identity: an equal point at the same position stays
+	 */
+	@Test
+	public void testRemove() {
+		Location first = all.get(0);
+		Location twin = new Location(first.name, first.latitude, first.longitude);
+		index.insert(twin);
+
+		assertAll(
+				() -> assertTrue(index.remove(first)),
+				() -> assertFalse(index.remove(first)),
+				() -> assertEquals(POINTS, index.size()),
+				() -> assertTrue(index.findNear(first.x(), first.y(), 0).stream().anyMatch(l -> l == twin)),
+				() -> assertFalse(index.findNear(first.x(), first.y(), 0).stream().anyMatch(l -> l == first)));
+	}
+
+	/**
+	 * A moved point is found at its new position only, and a point that
+	 * was not indexed at the old position is inserted
+	 */
+	@Test
+	public void testMove() {
+		Location moving = all.get(1);
+		Location removed = all.get(2);
+		double oldX = moving.x(), oldY = moving.y();
+
+		moving.longitude = SIDE - 1;
+		moving.latitude = 1;
+		index.move(moving, oldX, oldY);
+
+		index.remove(removed);
+		index.move(removed, removed.x(), removed.y());
+
+		assertAll(
+				() -> assertEquals(POINTS, index.size()),
+				() -> assertTrue(index.findNear(SIDE - 1, 1, 0).stream().anyMatch(l -> l == moving)),
+				() -> assertFalse(index.findNear(oldX, oldY, 0.5).stream().anyMatch(l -> l == moving)),
+				() -> assertEquals(1, index.getAll().stream().filter(l -> l == moving).count()),
+				() -> assertEquals(1, index.getAll().stream().filter(l -> l == removed).count()));
+	}
+}
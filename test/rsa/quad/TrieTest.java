@@ -53,4 +53,19 @@ public class TrieTest {
 	}
 
 
+	@Test
+	public void testInsideCircle() {
+		Trie<Location> trie = new LeafTrie<>(0, 0, 10, 10);
+
+		// Círculo que cobre o quadrado
+		assertTrue(trie.insideCircle(5, 5, 8));
+
+		// Círculo que só cobre parte do quadrado
+		assertFalse(trie.insideCircle(5, 5, 5));
+
+		// Canto mais afastado exatamente no limite
+		assertTrue(trie.insideCircle(0, 0, Math.sqrt(200)));
+	}
+
+
 }